@@ -0,0 +1,33 @@
+package com.uci.adapter.Enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum ChannelType {
+  whatsapp("whatsapp"),
+  sms("sms"),
+  web("web");
+
+  private static final ChannelType[] VALUES = values();
+
+  private final String name;
+
+  /**
+   * Case-insensitive lookup without allocating a lower-cased copy of the input
+   * @param name
+   * @return matching channel or null
+   */
+  public static ChannelType of(String name) {
+    if (name == null) {
+      return null;
+    }
+    for (ChannelType type : VALUES) {
+      if (type.name.equalsIgnoreCase(name)) {
+        return type;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,18 @@
+package com.uci.adapter.Enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outbound vendors which get their own pooled http client
+ */
+@AllArgsConstructor
+@Getter
+public enum HttpVendor {
+  gupshup("gupshup"),
+  netcore("netcore"),
+  transport("transport"),
+  cdac("cdac");
+
+  private final String name;
+}
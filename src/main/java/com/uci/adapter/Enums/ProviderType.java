@@ -0,0 +1,36 @@
+package com.uci.adapter.Enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum ProviderType {
+  gupshup("gupshup"),
+  cdac("cdac"),
+  sunbird("sunbird"),
+  pwa("pwa"),
+  netcore("netcore"),
+  firebase("firebase");
+
+  private static final ProviderType[] VALUES = values();
+
+  private final String name;
+
+  /**
+   * Case-insensitive lookup without allocating a lower-cased copy of the input
+   * @param name
+   * @return matching provider or null
+   */
+  public static ProviderType of(String name) {
+    if (name == null) {
+      return null;
+    }
+    for (ProviderType type : VALUES) {
+      if (type.name.equalsIgnoreCase(name)) {
+        return type;
+      }
+    }
+    return null;
+  }
+}
@@ -1,7 +1,7 @@
 package com.uci.adapter.app.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.uci.adapter.utils.JsonCodecs;
 import com.uci.utils.BotService;
 import com.uci.utils.dto.BotServiceParams;
 import io.fusionauth.client.FusionAuthClient;
@@ -71,7 +71,7 @@ public class AppConfiguration1 {
     @Qualifier("json")
     public RestTemplate getJSONRestTemplate() {
         return new RestTemplateBuilder()
-                .additionalMessageConverters(new MappingJackson2HttpMessageConverter(new ObjectMapper()))
+                .additionalMessageConverters(new MappingJackson2HttpMessageConverter(JsonCodecs.mapper()))
                 .build();
     }
 
@@ -1,12 +1,20 @@
 package com.uci.adapter.app.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 @EnableAsync
@@ -22,4 +30,37 @@ public class AsyncConfiguration  {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Bounded executor for blocking firebase work (credential parsing, send submission),
+     * kept apart from netty & kafka threads
+     */
+    @Bean(name="fcmExecutor")
+    public ThreadPoolTaskExecutor fcmExecutor(@Value("${fcm.executor.corePoolSize:#{8}}") int corePoolSize,
+                                              @Value("${fcm.executor.maxPoolSize:#{32}}") int maxPoolSize,
+                                              @Value("${fcm.executor.queueCapacity:#{10000}}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("FCM-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Scheduler over the fcm executor; when enabled & a meter registry is available, only this executor
+     * reports its pool & task metrics, named "fcm"
+     */
+    @Bean(name="fcmScheduler", destroyMethod = "dispose")
+    public Scheduler fcmScheduler(@Qualifier("fcmExecutor") ThreadPoolTaskExecutor fcmExecutor,
+                                  ObjectProvider<MeterRegistry> meterRegistry,
+                                  @Value("${fcm.scheduler.metrics:#{false}}") boolean metricsEnabled) {
+        ExecutorService executorService = fcmExecutor.getThreadPoolExecutor();
+        MeterRegistry registry = metricsEnabled ? meterRegistry.getIfAvailable() : null;
+        if (registry != null) {
+            executorService = ExecutorServiceMetrics.monitor(registry, executorService, "fcm");
+        }
+        return Schedulers.fromExecutorService(executorService, "fcm");
+    }
 }
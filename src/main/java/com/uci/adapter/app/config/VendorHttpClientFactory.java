@@ -0,0 +1,129 @@
+package com.uci.adapter.app.config;
+
+import com.uci.adapter.Enums.HttpVendor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One long-lived WebClient per outbound vendor, each backed by its own reactor netty connection pool.
+ *
+ * Settings are read per vendor with the prefix http.client.{vendor}, e.g. http.client.gupshup.maxConnections.
+ * Pool gauges are reported as uci.http.client.pool.* per vendor & remote address when a meter registry is available.
+ */
+@Slf4j
+@Component
+public class VendorHttpClientFactory {
+
+    private final Environment environment;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<HttpVendor, ConnectionProvider> providers = new EnumMap<>(HttpVendor.class);
+    private final Map<HttpVendor, WebClient> webClients = new EnumMap<>(HttpVendor.class);
+
+    @Autowired
+    public VendorHttpClientFactory(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        for (HttpVendor vendor : HttpVendor.values()) {
+            ConnectionProvider provider = buildConnectionProvider(vendor);
+            providers.put(vendor, provider);
+            webClients.put(vendor, WebClient.builder()
+                    .clientConnector(new ReactorClientHttpConnector(buildHttpClient(vendor, provider)))
+                    .build());
+        }
+    }
+
+    /**
+     * Get the shared web client of a vendor, use mutate() to add base url/default headers
+     * @param vendor
+     * @return
+     */
+    public WebClient getWebClient(HttpVendor vendor) {
+        return webClients.get(vendor);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+    private ConnectionProvider buildConnectionProvider(HttpVendor vendor) {
+        return ConnectionProvider.builder("uci-adapter-" + vendor.getName())
+                .maxConnections(getInt(vendor, "maxConnections", 100))
+                .pendingAcquireMaxCount(getInt(vendor, "pendingAcquireMaxCount", 1000))
+                .pendingAcquireTimeout(getDuration(vendor, "pendingAcquireTimeoutMs", 45000))
+                .maxIdleTime(getDuration(vendor, "maxIdleTimeMs", 30000))
+                .maxLifeTime(getDuration(vendor, "maxLifeTimeMs", 300000))
+                .evictInBackground(getDuration(vendor, "evictInBackgroundMs", 60000))
+                .metrics(true, () -> new ConnectionProvider.MeterRegistrar() {
+                    @Override
+                    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics poolMetrics) {
+                        meterRegistry.ifAvailable(registry -> registerPoolGauges(registry, vendor, remoteAddress, poolMetrics));
+                    }
+                })
+                .build();
+    }
+
+    private void registerPoolGauges(MeterRegistry registry, HttpVendor vendor, SocketAddress remoteAddress, ConnectionPoolMetrics poolMetrics) {
+        Tags tags = Tags.of("vendor", vendor.getName(), "remote.address", String.valueOf(remoteAddress));
+        Gauge.builder("uci.http.client.pool.acquired", poolMetrics, ConnectionPoolMetrics::acquiredSize).tags(tags).register(registry);
+        Gauge.builder("uci.http.client.pool.idle", poolMetrics, ConnectionPoolMetrics::idleSize).tags(tags).register(registry);
+        Gauge.builder("uci.http.client.pool.allocated", poolMetrics, ConnectionPoolMetrics::allocatedSize).tags(tags).register(registry);
+        Gauge.builder("uci.http.client.pool.pending", poolMetrics, ConnectionPoolMetrics::pendingAcquireSize).tags(tags).register(registry);
+    }
+
+    private HttpClient buildHttpClient(HttpVendor vendor, ConnectionProvider provider) {
+        HttpClient client = HttpClient.create(provider)
+                .keepAlive(getBoolean(vendor, "keepAlive", true))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getInt(vendor, "connectTimeoutMs", 10000))
+                .responseTimeout(getDuration(vendor, "readTimeoutMs", 30000));
+        long dnsTtlSeconds = getLong(vendor, "dnsCacheTtlSeconds", 300);
+        if (dnsTtlSeconds > 0) {
+            client = client.resolver(spec -> spec
+                    .cacheMaxTimeToLive(Duration.ofSeconds(dnsTtlSeconds))
+                    .cacheNegativeTimeToLive(Duration.ofSeconds(Math.min(dnsTtlSeconds, 30))));
+        }
+        log.info("VendorHttpClientFactory:: vendor: " + vendor.getName() + ", maxConnections: " + getInt(vendor, "maxConnections", 100)
+                + ", dnsCacheTtlSeconds: " + dnsTtlSeconds);
+        return client;
+    }
+
+    private int getInt(HttpVendor vendor, String key, int defaultValue) {
+        return environment.getProperty(propertyName(vendor, key), Integer.class, defaultValue);
+    }
+
+    private long getLong(HttpVendor vendor, String key, long defaultValue) {
+        return environment.getProperty(propertyName(vendor, key), Long.class, defaultValue);
+    }
+
+    private boolean getBoolean(HttpVendor vendor, String key, boolean defaultValue) {
+        return environment.getProperty(propertyName(vendor, key), Boolean.class, defaultValue);
+    }
+
+    private Duration getDuration(HttpVendor vendor, String key, long defaultMillis) {
+        return Duration.ofMillis(getLong(vendor, key, defaultMillis));
+    }
+
+    private String propertyName(HttpVendor vendor, String key) {
+        return "http.client." + vendor.getName() + "." + key;
+    }
+}
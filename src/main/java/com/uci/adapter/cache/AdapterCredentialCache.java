@@ -0,0 +1,117 @@
+package com.uci.adapter.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.uci.utils.BotService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Adapter side cache of typed, pre-parsed adapter credentials.
+ *
+ * Entries are refreshed in the background once they are older than the refresh interval,
+ * and concurrent misses for the same adapter & type share a single upstream call.
+ */
+@Slf4j
+@Component
+public class AdapterCredentialCache {
+
+    private final BotService botService;
+
+    private final AsyncLoadingCache<CredentialKey, Object> cache;
+
+    @Autowired
+    public AdapterCredentialCache(BotService botService,
+                                  @Value("${adapter.credentials.cache.maxSize:#{10000}}") long maxSize,
+                                  @Value("${adapter.credentials.cache.refreshAfterSeconds:#{300}}") long refreshAfterSeconds,
+                                  @Value("${adapter.credentials.cache.expireAfterSeconds:#{3600}}") long expireAfterSeconds) {
+        this.botService = botService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(Duration.ofSeconds(refreshAfterSeconds))
+                .expireAfterWrite(Duration.ofSeconds(expireAfterSeconds))
+                .buildAsync((key, executor) -> load(key));
+    }
+
+    /**
+     * Get typed credentials of an adapter, parsed once per load
+     * @param adapterId
+     * @param type
+     * @param parser converts the raw credentials node, may return null for invalid credentials
+     * @return credentials, or empty if not found/invalid
+     */
+    public <T> Mono<T> getCredentials(String adapterId, Class<T> type, Function<JsonNode, T> parser) {
+        if (adapterId == null) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(cache.get(new CredentialKey(adapterId, type, parser)))
+                .cast(type);
+    }
+
+    /**
+     * Drop cached credentials of an adapter, e.g. after rotation
+     * @param adapterId
+     */
+    public void invalidate(String adapterId) {
+        cache.synchronous().asMap().keySet().removeIf(key -> key.adapterId.equals(adapterId));
+    }
+
+    private CompletableFuture<Object> load(CredentialKey key) {
+        log.info("AdapterCredentialCache:load:: adapterId: " + key.adapterId + ", type: " + key.type.getSimpleName());
+        return botService.getAdapterCredentials(key.adapterId)
+                .<Object>flatMap(credentials -> Mono.justOrEmpty(key.parser.apply(credentials)))
+                .toFuture();
+    }
+
+    /**
+     * Get text value of a credentials field, looking at direct children first
+     * and falling back to a tree search for nested credentials
+     * @param credentials
+     * @param field
+     * @return
+     */
+    public static String getText(JsonNode credentials, String field) {
+        if (credentials == null) {
+            return null;
+        }
+        JsonNode value = credentials.get(field);
+        if (value == null) {
+            value = credentials.findValue(field);
+        }
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+
+    private static class CredentialKey {
+        private final String adapterId;
+        private final Class<?> type;
+        private final Function<JsonNode, ?> parser;
+
+        private CredentialKey(String adapterId, Class<?> type, Function<JsonNode, ?> parser) {
+            this.adapterId = adapterId;
+            this.type = type;
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CredentialKey)) return false;
+            CredentialKey that = (CredentialKey) o;
+            return adapterId.equals(that.adapterId) && type.equals(that.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(adapterId, type);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.uci.adapter.cache;
+
+import com.uci.utils.cache.service.RedisCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batches redis key/value writes & flushes them in one pipeline, on batch size or flush interval,
+ * whichever comes first. Each write completes or fails on its own.
+ *
+ * Entries are written with RedisCacheService.setCache, so keys & values are the ones its reads expect.
+ * Its template shares the connection factory, so its writes go to the pipelined connection bound during a flush.
+ */
+@Slf4j
+@Component
+public class RedisPipelinedWriter {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisCacheService redisCacheService;
+
+    private final Sinks.Many<PendingWrite> sink = Sinks.many().unicast().onBackpressureBuffer();
+
+    /* Queued writes not completed yet, failed if the flush pipeline ends */
+    private final Set<PendingWrite> outstanding = ConcurrentHashMap.newKeySet();
+
+    private final Duration writeTimeout;
+
+    private final Disposable subscription;
+
+    @Autowired
+    public RedisPipelinedWriter(RedisTemplate<String, Object> redisTemplate,
+                                RedisCacheService redisCacheService,
+                                @Value("${redis.pipeline.batchSize:#{500}}") int batchSize,
+                                @Value("${redis.pipeline.flushIntervalMs:#{50}}") long flushIntervalMs,
+                                @Value("${redis.pipeline.writeTimeoutMs:#{10000}}") long writeTimeoutMs) {
+        this.redisTemplate = redisTemplate;
+        this.redisCacheService = redisCacheService;
+        this.writeTimeout = Duration.ofMillis(writeTimeoutMs);
+        /* bufferTimeout is not backpressure aware, its timer fails on lack of demand while a flush
+         * is running - buffer the batches so it always has demand */
+        this.subscription = sink.asFlux()
+                .bufferTimeout(batchSize, Duration.ofMillis(flushIntervalMs))
+                .onBackpressureBuffer()
+                .concatMap(batch -> Mono.fromRunnable(() -> flush(batch))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            log.error("RedisPipelinedWriter:flush::Exception: " + e.getMessage());
+                            batch.forEach(pendingWrite -> pendingWrite.result.completeExceptionally(e));
+                            return Mono.empty();
+                        }))
+                .subscribe(null,
+                        e -> {
+                            log.error("RedisPipelinedWriter:pipeline::Exception: " + e.getMessage());
+                            failOutstanding(e);
+                        },
+                        () -> failOutstanding(new IllegalStateException("RedisPipelinedWriter stopped")));
+    }
+
+    /**
+     * Queue a key/value write, the entry does not expire, as with RedisCacheService.setCache
+     * @param key
+     * @param value
+     * @return completes once the entry is written, errors if this entry could not be written
+     */
+    public Mono<Void> write(String key, Object value) {
+        return Mono.defer(() -> {
+            PendingWrite pendingWrite = new PendingWrite(key, value);
+            outstanding.add(pendingWrite);
+            pendingWrite.result.whenComplete((result, e) -> outstanding.remove(pendingWrite));
+            Sinks.EmitResult emitResult;
+            while ((emitResult = sink.tryEmitNext(pendingWrite)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (emitResult.isFailure()) {
+                pendingWrite.result.completeExceptionally(new IllegalStateException("RedisPipelinedWriter not accepting writes, " + emitResult));
+            }
+            return Mono.fromFuture(pendingWrite.result).timeout(writeTimeout);
+        });
+    }
+
+    @PreDestroy
+    public void dispose() {
+        sink.tryEmitComplete();
+        subscription.dispose();
+        failOutstanding(new IllegalStateException("RedisPipelinedWriter stopped"));
+    }
+
+    private void failOutstanding(Throwable e) {
+        outstanding.forEach(pendingWrite -> pendingWrite.result.completeExceptionally(e));
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (PendingWrite pendingWrite : batch) {
+                        redisCacheService.setCache(pendingWrite.key, pendingWrite.value);
+                    }
+                    return null;
+                }
+            });
+            batch.forEach(pendingWrite -> pendingWrite.result.complete(null));
+        } catch (Exception e) {
+            log.error("RedisPipelinedWriter:flush::Pipeline of " + batch.size() + " failed, writing one by one: " + e.getMessage());
+            batch.forEach(this::writeSingle);
+        }
+    }
+
+    private void writeSingle(PendingWrite pendingWrite) {
+        try {
+            redisCacheService.setCache(pendingWrite.key, pendingWrite.value);
+            pendingWrite.result.complete(null);
+        } catch (Exception e) {
+            log.error("RedisPipelinedWriter:writeSingle::Exception for key " + pendingWrite.key + ": " + e.getMessage());
+            pendingWrite.result.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingWrite {
+        private final String key;
+        private final Object value;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingWrite(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -1,17 +1,16 @@
 package com.uci.adapter.cdac;
 
+import com.google.common.collect.Lists;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import messagerosa.core.model.XMessage;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,40 +31,32 @@ public class CDACClient {
     String baseURL;
     String trackBaseURL;
 
-    public List<String> sendBulkSMS() throws Exception {
-        String allIDs = xMsg.getTo().getUserID();
-        List<String> ids = Arrays.asList(allIDs.split(","));
-        int numOfBatches = (int) Math.ceil((double) ids.size() / batchSize);
-        List<CompletableFuture<String>> futures = new ArrayList<>();
-        int start, end;
-        for(int i=0; i<numOfBatches; i++){
-            start = i*batchSize;
-            end = (i+1)*batchSize;
-            if (start > ids.size()) break;
-            if (end > ids.size()) end = ids.size();
-
-            futures.add(sendSingleBatch(getURL(getIDs(start, end))));
-        }
+    /* Shared pooled client, e.g. VendorHttpClientFactory.getWebClient(HttpVendor.cdac) */
+    WebClient webClient;
+    int maxInFlight;
 
-        List<String> messageIds = new ArrayList<>();
-        for(CompletableFuture<String> future: futures){
-            messageIds.add(future.get());
-        }
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * Send sms to all recipients in batches, blocking until all batches are sent
+     * @return message id per batch, in batch order, "-1" for a failed batch
+     * @throws Exception
+     */
+    public List<String> sendBulkSMS() throws Exception {
+        List<String> messageIds = sendBulkSMSF().collectList().block();
         log.info("All messages sent");
         return messageIds;
     }
 
-    private String getIDs(int start, int end){
-        String[] userIDs = xMsg.getTo().getUserID().split(",");
-        String[] strippedIDs = Arrays.copyOfRange(userIDs, start, end);
-        StringBuilder sb = new StringBuilder();
-        String prefix = "";
-        for (String serverId : strippedIDs) {
-            sb.append(prefix);
-            prefix = ",";
-            sb.append(serverId);
-        }
-        return sb.toString();
+    /**
+     * Send sms to all recipients in batches, with at most maxInFlight batches sent concurrently
+     * @return message id per batch, in batch order, "-1" for a failed batch
+     */
+    public Flux<String> sendBulkSMSF() {
+        List<String> ids = Arrays.asList(xMsg.getTo().getUserID().split(","));
+        return Flux.fromIterable(Lists.partition(ids, batchSize))
+                .flatMapSequential(batch -> sendSingleBatch(getURL(String.join(",", batch))),
+                        maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT);
     }
 
     public URI getURL(String userIDs){
@@ -81,18 +72,28 @@ public class CDACClient {
         return expanded;
     }
 
-    @Async
-    public CompletableFuture<String> sendSingleBatch(URI uri){
-        RestTemplate restTemplate = new RestTemplate();
-        String response = restTemplate.postForObject(uri, null, String.class);
-        String messageID = getChannelMessageId(response);
-        if (messageID.equals("")) {
-            return CompletableFuture.completedFuture("-1");
-        } else {
-            return CompletableFuture.completedFuture(messageID);
-        }
+    public Mono<String> sendSingleBatch(URI uri){
+        return getWebClient().post()
+                .uri(uri)
+                .retrieve()
+                .bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(response -> {
+                    String messageID = getChannelMessageId(response);
+                    return messageID.equals("") ? "-1" : messageID;
+                })
+                .onErrorResume(e -> {
+                    log.error("CDACClient:sendSingleBatch::Exception: " + e.getMessage());
+                    return Mono.just("-1");
+                });
     }
 
+    private WebClient getWebClient() {
+        if (webClient == null) {
+            webClient = WebClient.create();
+        }
+        return webClient;
+    }
 
     private static String getChannelMessageId(String response) {
         try {
@@ -104,19 +105,34 @@ public class CDACClient {
         }
     }
 
+    /**
+     * Track messages, blocking until all reports are fetched
+     * @param messageIDsString comma separated message ids
+     * @return merged tracking report
+     */
     public TrackDetails trackMultipleMessages(String messageIDsString) throws ExecutionException, InterruptedException {
-        String[] messageIDs = messageIDsString.split(",");
-        List<CompletableFuture<TrackDetails>> futures = new ArrayList<>();
-        for(String messageID: messageIDs){
-            futures.add(trackMessage(messageID));
-        }
+        return trackMultipleMessagesF(messageIDsString).toFuture().get();
+    }
 
-        List<TrackDetails> trackDetails = new ArrayList<>();
-        for(CompletableFuture<TrackDetails> future: futures){
-            trackDetails.add(future.get());
-        }
-        return mergeTrackDetails(trackDetails);
+    /**
+     * Track messages, with at most maxInFlight reports fetched concurrently
+     * @param messageIDsString comma separated message ids
+     * @return merged tracking report of the reports fetched successfully
+     */
+    public Mono<TrackDetails> trackMultipleMessagesF(String messageIDsString) {
+        return trackMessagesF(messageIDsString)
+                .collectList()
+                .map(this::mergeTrackDetails);
+    }
 
+    /**
+     * Track messages, with at most maxInFlight reports fetched concurrently
+     * @param messageIDsString comma separated message ids
+     * @return report per message fetched successfully, in message order
+     */
+    public Flux<TrackDetails> trackMessagesF(String messageIDsString) {
+        return Flux.fromArray(messageIDsString.split(","))
+                .flatMapSequential(this::trackMessageF, maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT);
     }
 
     public TrackDetails mergeTrackDetails(List<TrackDetails> trackDetails) {
@@ -129,15 +145,16 @@ public class CDACClient {
         int failedSMSCount = 0;
         int submittedSMSCount = 0;
         int deliveredSMSCount = 0;
-        String undelivered = "";
+        StringBuilder undelivered = new StringBuilder();
 
         StringBuilder sb = new StringBuilder();
         String prefix = "";
         for(TrackDetails tt: trackDetails){
-            failedSMSCount += Integer.parseInt(tt.getFailedSMSCount());
-            submittedSMSCount += Integer.parseInt(tt.getSubmittedSMSCount());
-            deliveredSMSCount += Integer.parseInt(tt.getDeliveredSMSCount());
-            undelivered += tt.getUndelivered();
+            if (tt == null) continue;
+            failedSMSCount += parseCount(tt.getFailedSMSCount());
+            submittedSMSCount += parseCount(tt.getSubmittedSMSCount());
+            deliveredSMSCount += parseCount(tt.getDeliveredSMSCount());
+            if (tt.getUndelivered() != null) undelivered.append(tt.getUndelivered());
 
             if(tt.getDelivered() != null && tt.getDelivered().getPhoneNumberStatus() != null) delivered.addAll(tt.getDelivered().getPhoneNumberStatus());
             if(tt.getSubmitted() != null && tt.getSubmitted().getPhoneNumberStatus() != null) submitted.addAll(tt.getSubmitted().getPhoneNumberStatus());
@@ -150,7 +167,7 @@ public class CDACClient {
         t.setDeliveredSMSCount(String.valueOf(deliveredSMSCount));
         t.setSubmittedSMSCount(String.valueOf(submittedSMSCount));
         t.setFailedSMSCount(String.valueOf(failedSMSCount));
-        t.setUndelivered(undelivered);
+        t.setUndelivered(undelivered.toString());
 
         DeliveryDetails del = new DeliveryDetails();
         del.setPhoneNumberStatus(delivered);
@@ -170,26 +187,39 @@ public class CDACClient {
 
     }
 
-    @Async
+    private static int parseCount(String count) {
+        if (count == null || count.trim().isEmpty()) return 0;
+        try {
+            return Integer.parseInt(count.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public CompletableFuture<TrackDetails> trackMessage(String messageID){
-        log.info("Called");
+        return trackMessageF(messageID).toFuture();
+    }
+
+    /**
+     * Fetch the tracking report of a message
+     * @param messageID
+     * @return report, empty if it could not be fetched or parsed
+     */
+    public Mono<TrackDetails> trackMessageF(String messageID){
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(trackBaseURL)
                 .queryParam("password", password)
                 .queryParam("userid", username)
                 .queryParam("msgid", messageID);
 
         URI expanded = URI.create(builder.toUriString());
-        RestTemplate restTemplate = new RestTemplate();
-        String response = restTemplate.getForObject(expanded, String.class);
-        JAXBContext context;
-        TrackDetails trackSMSResponse = null;
-        try{
-            context = JAXBContext.newInstance(TrackDetails.class);
-            Unmarshaller jaxbUnmarshaller = context.createUnmarshaller();
-            trackSMSResponse = (TrackDetails) jaxbUnmarshaller.unmarshal((new ByteArrayInputStream(response.getBytes())));
-        }catch (Exception e){
-            System.out.println("Error in tracking");
-        }
-        return CompletableFuture.completedFuture(trackSMSResponse);
+        return getWebClient().get()
+                .uri(expanded)
+                .retrieve()
+                .bodyToMono(String.class)
+                .flatMap(response -> Mono.fromCallable(() -> TrackDetailsParser.parse(response)))
+                .onErrorResume(e -> {
+                    log.error("CDACClient:trackMessageF::Error in tracking " + messageID + ": " + e.getMessage());
+                    return Mono.empty();
+                });
     }
 }
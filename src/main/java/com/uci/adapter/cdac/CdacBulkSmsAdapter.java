@@ -1,7 +1,7 @@
 package com.uci.adapter.cdac;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.uci.adapter.cache.AdapterCredentialCache;
 import com.uci.adapter.provider.factory.AbstractProvider;
 import com.uci.adapter.provider.factory.IProvider;
 import com.uci.dao.repository.XMessageRepository;
@@ -16,7 +16,6 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
-import java.util.function.Function;
 
 @Slf4j
 @Qualifier("cdacSMSBulkAdapter")
@@ -31,6 +30,15 @@ public class CdacBulkSmsAdapter extends AbstractProvider implements IProvider {
     @Autowired
     public CdacService cdacService;
 
+    @Autowired
+    private AdapterCredentialCache credentialCache;
+
+    @Autowired
+    private CdacDeliveryReportPoller deliveryReportPoller;
+
+    @Autowired
+    private CdacSendCoalescer sendCoalescer;
+
     @Override
     public Mono<XMessage> convertMessageToXMsg(Object msg) throws JsonProcessingException {
         // Build xMessage => Most calls would be to update the status of Messages
@@ -44,42 +52,54 @@ public class CdacBulkSmsAdapter extends AbstractProvider implements IProvider {
 
     @Override
     public Mono<XMessage> processOutBoundMessageF(XMessage nextMsg) throws Exception {
-        return botService.getAdapterCredentials(nextMsg.getAdapterId()).map(new Function<JsonNode, XMessage>() {
-            @Override
-            public XMessage apply(JsonNode credentials) {
-                if (credentials != null && !credentials.isEmpty()
-                    && credentials.get("username") != null && credentials.get("password") != null
-                    && credentials.get("senderId") != null && credentials.get("secureKey") != null) {
+        return credentialCache.getCredentials(nextMsg.getAdapterId(), CdacCredentials.class, CdacCredentials::from)
+                .flatMap(credentials -> {
                     String templateId = nextMsg.getTransformers().get(0).getMetaData().get("templateId");
-                    String response = cdacService.sendUnicodeSMS(
-                            credentials.get("username").asText(),
-                            credentials.get("password").asText(),
-                            nextMsg.getPayload().getText(),
-                            credentials.get("senderId").asText(),
-                            nextMsg.getTo().getUserID(),
-                            credentials.get("secureKey").asText(),
-                            templateId);
-                    if (response != null) {
-                        String splitResponse[] = response.split(",");
-                        nextMsg.setMessageState(XMessage.MessageState.SENT);
-                        if (splitResponse[1] != null && !splitResponse[1].isEmpty()) {
-                            nextMsg.setMessageId(MessageId.builder().channelMessageId(splitResponse[1].replaceFirst("MsgID = ", "")).build());
-                        }
-                        return nextMsg;
-                    } else {
-                        log.error("No Response from cdac api");
-                        nextMsg.setMessageState(XMessage.MessageState.NOT_SENT);
-                        return nextMsg;
-                    }
-                } else {
+                    return sendCoalescer.send(credentials, templateId, nextMsg.getPayload().getText(), nextMsg.getTo().getUserID())
+                            .map(response -> applySendResponse(nextMsg, response, credentials))
+                            .switchIfEmpty(Mono.fromSupplier(() -> {
+                                log.error("No Response from cdac api");
+                                nextMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+                                return nextMsg;
+                            }))
+                            .onErrorResume(e -> {
+                                log.error("CdacBulkSmsAdapter:processOutBoundMessageF::Exception in cdac api call: " + e.getMessage());
+                                nextMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+                                return Mono.just(nextMsg);
+                            });
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
                     log.error("Credentials not found");
                     nextMsg.setMessageState(XMessage.MessageState.NOT_SENT);
                     return nextMsg;
-                }
-            }
-        });
+                }));
+    }
 
+    /**
+     * Set the sent state & cdac message id from a send response e.g. '402,MsgID = 150620161466003974245msdgsms'
+     * @param nextMsg
+     * @param response
+     * @param credentials
+     * @return
+     */
+    private XMessage applySendResponse(XMessage nextMsg, String response, CdacCredentials credentials) {
+        String splitResponse[] = response.split(",");
+        nextMsg.setMessageState(XMessage.MessageState.SENT);
+        if (splitResponse.length > 1 && !splitResponse[1].isEmpty()) {
+            String channelMessageId = splitResponse[1].replaceFirst("MsgID = ", "");
+            nextMsg.setMessageId(MessageId.builder().channelMessageId(channelMessageId).build());
+            deliveryReportPoller.register(channelMessageId.trim(), nextMsg, credentials);
+        }
+        return nextMsg;
+    }
 
+    /**
+     * Delivery state updates of sent messages, in batches, from the delivery report poller.
+     * The poller only queries cdac while this is subscribed, e.g. by the service that persists xmessage states.
+     * @return
+     */
+    public Flux<List<XMessage>> getDeliveryReports() {
+        return deliveryReportPoller.getStatusUpdates();
     }
 
     public TrackDetails getLastTrackingReport(String campaignID) throws Exception {
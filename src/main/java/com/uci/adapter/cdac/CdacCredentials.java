@@ -0,0 +1,33 @@
+package com.uci.adapter.cdac;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CdacCredentials {
+    private String username;
+    private String password;
+    private String senderId;
+    private String secureKey;
+
+    /**
+     * Parse cdac credentials, null if any field is missing
+     * @param credentials
+     * @return
+     */
+    public static CdacCredentials from(JsonNode credentials) {
+        if (credentials == null || credentials.isEmpty()
+                || credentials.get("username") == null || credentials.get("password") == null
+                || credentials.get("senderId") == null || credentials.get("secureKey") == null) {
+            return null;
+        }
+        CdacCredentials cdacCredentials = new CdacCredentials();
+        cdacCredentials.setUsername(credentials.get("username").asText());
+        cdacCredentials.setPassword(credentials.get("password").asText());
+        cdacCredentials.setSenderId(credentials.get("senderId").asText());
+        cdacCredentials.setSecureKey(credentials.get("secureKey").asText());
+        return cdacCredentials;
+    }
+}
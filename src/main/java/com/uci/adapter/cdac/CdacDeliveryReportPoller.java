@@ -0,0 +1,316 @@
+package com.uci.adapter.cdac;
+
+import com.google.common.collect.Lists;
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import lombok.extern.slf4j.Slf4j;
+import messagerosa.core.model.MessageId;
+import messagerosa.core.model.SenderReceiverInfo;
+import messagerosa.core.model.XMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Polls cdac tracking reports of sent messages & emits DELIVERED/FAILED_TO_DELIVER xmessage updates in batches.
+ *
+ * Messages are polled less often as they age, and dropped once every recipient has a final state or they exceed the max age.
+ * Reports are only polled while the status updates are subscribed, updates that can not be emitted are polled again.
+ */
+@Slf4j
+@Component
+public class CdacDeliveryReportPoller {
+
+    private final VendorHttpClientFactory httpClientFactory;
+
+    private final boolean enabled;
+    private final String trackURL;
+    private final Duration pollInterval;
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private final long maxAgeMs;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    /* Outstanding messages by cdac message id */
+    private final Map<String, Outstanding> outstanding = new ConcurrentHashMap<>();
+
+    /* Not auto cancelled, so the sink outlives a subscriber that cancels */
+    private final Sinks.Many<XMessage> updates;
+
+    private final Flux<List<XMessage>> updateBatches;
+
+    private Disposable polling;
+
+    @Autowired
+    public CdacDeliveryReportPoller(VendorHttpClientFactory httpClientFactory,
+                                    @Value("${cdac.delivery.poller.enabled:#{false}}") boolean enabled,
+                                    @Value("${cdac.delivery.poller.trackURL:https://msdgweb.mgov.gov.in/XMLForReportG/reportXMLNew}") String trackURL,
+                                    @Value("${cdac.delivery.poller.intervalSeconds:#{30}}") long intervalSeconds,
+                                    @Value("${cdac.delivery.poller.initialDelaySeconds:#{60}}") long initialDelaySeconds,
+                                    @Value("${cdac.delivery.poller.maxDelaySeconds:#{3600}}") long maxDelaySeconds,
+                                    @Value("${cdac.delivery.poller.maxAgeHours:#{48}}") long maxAgeHours,
+                                    @Value("${cdac.delivery.poller.batchSize:#{50}}") int batchSize,
+                                    @Value("${cdac.delivery.poller.maxInFlight:#{4}}") int maxInFlight,
+                                    @Value("${cdac.delivery.poller.emitBatchSize:#{500}}") int emitBatchSize,
+                                    @Value("${cdac.delivery.poller.emitIntervalMs:#{1000}}") long emitIntervalMs,
+                                    @Value("${cdac.delivery.poller.emitBufferSize:#{4096}}") int emitBufferSize) {
+        this.httpClientFactory = httpClientFactory;
+        this.enabled = enabled;
+        this.trackURL = trackURL;
+        this.pollInterval = Duration.ofSeconds(intervalSeconds);
+        this.initialDelayMs = Duration.ofSeconds(initialDelaySeconds).toMillis();
+        this.maxDelayMs = Duration.ofSeconds(maxDelaySeconds).toMillis();
+        this.maxAgeMs = Duration.ofHours(maxAgeHours).toMillis();
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.updates = Sinks.many().multicast().onBackpressureBuffer(emitBufferSize, false);
+        /* bufferTimeout is not backpressure aware, its timer fails on lack of demand from a slow subscriber */
+        this.updateBatches = updates.asFlux()
+                .bufferTimeout(emitBatchSize, Duration.ofMillis(emitIntervalMs))
+                .onBackpressureBuffer()
+                .filter(batch -> !batch.isEmpty());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        polling = Flux.interval(pollInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> pollDue()
+                        .onErrorResume(e -> {
+                            log.error("CdacDeliveryReportPoller:start::Exception in poll: " + e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+        log.info("CdacDeliveryReportPoller:start:: polling every " + pollInterval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (polling != null) {
+            polling.dispose();
+        }
+        updates.tryEmitComplete();
+    }
+
+    /**
+     * Delivery state updates, in batches. Polling is paused while there is no subscriber.
+     * @return
+     */
+    public Flux<List<XMessage>> getStatusUpdates() {
+        return updateBatches;
+    }
+
+    /**
+     * Track delivery of a sent message, no-op when the poller is disabled.
+     * Messages sent in one bulk call share the message id, their recipients are tracked together.
+     * @param messageId cdac message id
+     * @param sent sent xmessage
+     * @param credentials credentials used to send the message
+     */
+    public void register(String messageId, XMessage sent, CdacCredentials credentials) {
+        if (!enabled || messageId == null || messageId.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        outstanding.compute(messageId, (id, entry) -> {
+            Outstanding tracked = entry != null ? entry
+                    : new Outstanding(sent, credentials.getUsername(), credentials.getPassword(), now, now + initialDelayMs);
+            String to = sent.getTo() != null ? sent.getTo().getUserID() : null;
+            if (to != null) {
+                for (String number : to.split(",")) {
+                    String normalized = normalize(number);
+                    if (!normalized.isEmpty()) {
+                        tracked.recipients.add(normalized);
+                    }
+                }
+            }
+            return tracked;
+        });
+    }
+
+    /**
+     * @return number of messages still tracked
+     */
+    public int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    private Mono<Void> pollDue() {
+        if (updates.currentSubscriberCount() == 0) {
+            return Mono.empty();
+        }
+        long now = System.currentTimeMillis();
+        Map<List<String>, List<String>> dueByAccount = new HashMap<>();
+        outstanding.forEach((messageId, entry) -> {
+            if (now - entry.sentAt > maxAgeMs) {
+                log.info("CdacDeliveryReportPoller:pollDue:: giving up on " + messageId + " after max age");
+                outstanding.remove(messageId);
+            } else if (entry.nextPollAt <= now) {
+                entry.attempts++;
+                entry.nextPollAt = now + Math.min(initialDelayMs << Math.min(entry.attempts, 20), maxDelayMs);
+                dueByAccount.computeIfAbsent(Arrays.asList(entry.username, entry.password), k -> new ArrayList<>()).add(messageId);
+            }
+        });
+        if (dueByAccount.isEmpty()) {
+            return Mono.empty();
+        }
+        WebClient webClient = httpClientFactory.getWebClient(HttpVendor.cdac);
+        return Flux.fromIterable(dueByAccount.entrySet())
+                .flatMapIterable(account -> {
+                    List<PollBatch> batches = new ArrayList<>();
+                    for (List<String> ids : Lists.partition(account.getValue(), batchSize)) {
+                        batches.add(new PollBatch(account.getKey().get(0), account.getKey().get(1), ids));
+                    }
+                    return batches;
+                })
+                .flatMap(batch -> CDACClient.builder()
+                        .username(batch.username)
+                        .password(batch.password)
+                        .trackBaseURL(trackURL)
+                        .webClient(webClient)
+                        .maxInFlight(maxInFlight)
+                        .build()
+                        .trackMessagesF(String.join(",", batch.messageIds))
+                        .doOnNext(this::handleReport), maxInFlight)
+                .then();
+    }
+
+    private void handleReport(TrackDetails report) {
+        String messageId = report.getMessageId();
+        Outstanding entry = messageId != null ? outstanding.get(messageId) : null;
+        if (entry == null) {
+            return;
+        }
+        emit(messageId, entry, report.getDelivered(), XMessage.MessageState.DELIVERED);
+        emit(messageId, entry, report.getFailed(), XMessage.MessageState.FAILED_TO_DELIVER);
+        if (isFinal(entry, report)) {
+            outstanding.remove(messageId);
+        }
+    }
+
+    /**
+     * A message is final once every recipient has a final state. The gateway may not have filled in a report yet,
+     * so without known recipients it is final only once the report has final states & nothing submitted.
+     * @param entry
+     * @param report
+     * @return
+     */
+    private boolean isFinal(Outstanding entry, TrackDetails report) {
+        if (!entry.recipients.isEmpty()) {
+            return entry.emitted.containsAll(entry.recipients);
+        }
+        return !entry.emitted.isEmpty() && isEmpty(report.getSubmitted());
+    }
+
+    private static boolean isEmpty(DeliveryDetails details) {
+        return details == null || details.getPhoneNumberStatus() == null || details.getPhoneNumberStatus().isEmpty();
+    }
+
+    /**
+     * Compare numbers by their last 10 digits, reports & xmessages may differ in the country code
+     * @param number
+     * @return
+     */
+    private static String normalize(String number) {
+        String digits = number.replaceAll("[^0-9]", "");
+        return digits.length() > 10 ? digits.substring(digits.length() - 10) : digits;
+    }
+
+    private void emit(String messageId, Outstanding entry, DeliveryDetails details, XMessage.MessageState state) {
+        if (details == null || details.getPhoneNumberStatus() == null) {
+            return;
+        }
+        for (PhoneNumberStatus status : details.getPhoneNumberStatus()) {
+            String number = status.getMobileNumber() != null ? normalize(status.getMobileNumber()) : null;
+            if (number == null || !entry.emitted.add(number)) {
+                continue;
+            }
+            XMessage update = XMessage.builder()
+                    .app(entry.app)
+                    .botId(entry.botId)
+                    .adapterId(entry.adapterId)
+                    .channelURI(entry.channelURI)
+                    .providerURI(entry.providerURI)
+                    .from(entry.from)
+                    .to(SenderReceiverInfo.builder().userID(status.getMobileNumber()).build())
+                    .messageId(MessageId.builder().channelMessageId(messageId).build())
+                    .messageState(state)
+                    .timestamp(System.currentTimeMillis())
+                    .build();
+            /* Reports of a poll are handled concurrently */
+            Sinks.EmitResult result;
+            while ((result = updates.tryEmitNext(update)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (result.isFailure()) {
+                /* Not final for this poller then, the number's state is emitted from a later poll */
+                entry.emitted.remove(number);
+                log.error("CdacDeliveryReportPoller:emit:: update for " + messageId + "/" + status.getMobileNumber() + " not emitted, polled again: " + result);
+            }
+        }
+    }
+
+    private static class Outstanding {
+        private final String app;
+        private final UUID botId;
+        private final String adapterId;
+        private final String channelURI;
+        private final String providerURI;
+        private final SenderReceiverInfo from;
+        private final String username;
+        private final String password;
+        private final long sentAt;
+        private volatile long nextPollAt;
+        private volatile int attempts;
+        /* Recipients sent to, normalized */
+        private final Set<String> recipients = ConcurrentHashMap.newKeySet();
+        /* Numbers whose final state was already emitted, normalized */
+        private final Set<String> emitted = ConcurrentHashMap.newKeySet();
+
+        private Outstanding(XMessage sent, String username, String password, long sentAt, long nextPollAt) {
+            this.app = sent.getApp();
+            this.botId = sent.getBotId();
+            this.adapterId = sent.getAdapterId();
+            this.channelURI = sent.getChannelURI();
+            this.providerURI = sent.getProviderURI();
+            this.from = sent.getFrom();
+            this.username = username;
+            this.password = password;
+            this.sentAt = sentAt;
+            this.nextPollAt = nextPollAt;
+        }
+    }
+
+    private static class PollBatch {
+        private final String username;
+        private final String password;
+        private final List<String> messageIds;
+
+        private PollBatch(String username, String password, List<String> messageIds) {
+            this.username = username;
+            this.password = password;
+            this.messageIds = messageIds;
+        }
+    }
+}
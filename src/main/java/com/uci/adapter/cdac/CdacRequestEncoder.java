@@ -0,0 +1,95 @@
+package com.uci.adapter.cdac;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the cdac send sms request fields: unicode entity encoded content, sha-1 password digest
+ * (cached per username & password) and the sha-512 request key.
+ */
+public final class CdacRequestEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /* Longest entity is "&#65535;" */
+    private static final int MAX_ENTITY_LENGTH = 8;
+
+    private static final Cache<List<String>, String> passwordDigests = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(Duration.ofHours(12))
+            .build();
+
+    private static final ThreadLocal<MessageDigest> sha1 = ThreadLocal.withInitial(() -> getDigest("SHA-1"));
+
+    private static final ThreadLocal<MessageDigest> sha512 = ThreadLocal.withInitial(() -> getDigest("SHA-512"));
+
+    private CdacRequestEncoder() {
+    }
+
+    /**
+     * Encode each char of the message as a decimal entity e.g. &#2357;
+     * @param message
+     * @return
+     */
+    public static String encodeEntities(String message) {
+        int length = message.length();
+        StringBuilder sb = new StringBuilder(length * MAX_ENTITY_LENGTH);
+        for (int i = 0; i < length; i++) {
+            sb.append("&#").append((int) message.charAt(i)).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the hex sha-1 digest of the password, as expected by cdac
+     * @param username
+     * @param password
+     * @return
+     */
+    public static String passwordDigest(String username, String password) {
+        return passwordDigests.get(Arrays.asList(username, password), key -> {
+            MessageDigest md = sha1.get();
+            md.reset();
+            return toHex(md.digest(password.getBytes(StandardCharsets.ISO_8859_1)));
+        });
+    }
+
+    /**
+     * Get the hex sha-512 request key of username, sender id, encoded content & secure key
+     * @param username
+     * @param senderId
+     * @param content
+     * @param secureKey
+     * @return
+     */
+    public static String requestKey(String username, String senderId, String content, String secureKey) {
+        String value = username.trim() + senderId.trim() + content.trim() + secureKey.trim();
+        MessageDigest md = sha512.get();
+        md.reset();
+        return toHex(md.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String toHex(byte[] data) {
+        char[] chars = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            chars[i * 2] = HEX[(data[i] >>> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[data[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest getDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+}
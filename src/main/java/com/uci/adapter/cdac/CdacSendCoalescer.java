@@ -0,0 +1,141 @@
+package com.uci.adapter.cdac;
+
+import com.google.common.collect.Lists;
+import com.uci.adapter.utils.MicroBatcher;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Optional coalescing of cdac sends: messages with the same credentials, template & text sent within
+ * a short window go out as one bulk call with comma separated numbers, up to the recipient limit.
+ * Each message gets the response, i.e. the MsgID, of its bulk call.
+ */
+@Slf4j
+@Component
+public class CdacSendCoalescer {
+
+    private final CdacService cdacService;
+
+    @Getter
+    private final boolean enabled;
+
+    private final int maxRecipients;
+
+    private final int maxInFlight;
+
+    private final MicroBatcher<SendRequest, String> batcher;
+
+    @Autowired
+    public CdacSendCoalescer(CdacService cdacService,
+                             @Value("${cdac.coalesce.enabled:#{false}}") boolean enabled,
+                             @Value("${cdac.coalesce.maxRecipients:#{100}}") int maxRecipients,
+                             @Value("${cdac.coalesce.maxBatchSize:#{1000}}") int maxBatchSize,
+                             @Value("${cdac.coalesce.maxWaitMs:#{50}}") long maxWaitMs,
+                             @Value("${cdac.coalesce.maxInFlight:#{4}}") int maxInFlight) {
+        this.cdacService = cdacService;
+        this.enabled = enabled;
+        this.maxRecipients = maxRecipients;
+        this.maxInFlight = maxInFlight;
+        this.batcher = enabled
+                ? new MicroBatcher<>("cdac-coalesce", maxBatchSize, Duration.ofMillis(maxWaitMs), maxInFlight, this::sendCoalesced)
+                : null;
+    }
+
+    /**
+     * Send a unicode sms, coalesced with identical concurrent sends when enabled
+     * @param credentials
+     * @param templateId
+     * @param text
+     * @param mobileNumber
+     * @return response of the (bulk) call, empty if its bulk call failed
+     */
+    public Mono<String> send(CdacCredentials credentials, String templateId, String text, String mobileNumber) {
+        if (batcher == null) {
+            return sendUnicodeSMS(credentials, templateId, text, mobileNumber);
+        }
+        return batcher.submit(new SendRequest(credentials, templateId, text, mobileNumber));
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
+
+    /**
+     * Group a batch by credentials, template & text, send each group in chunks of max recipients
+     * @param requests
+     * @return response per request, in order, null where the bulk call failed
+     */
+    private Mono<List<String>> sendCoalesced(List<SendRequest> requests) {
+        Map<List<String>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            groups.computeIfAbsent(requests.get(i).groupKey(), k -> new ArrayList<>()).add(i);
+        }
+        String[] responses = new String[requests.size()];
+        return Flux.fromIterable(groups.values())
+                .flatMapIterable(indexes -> Lists.partition(indexes, maxRecipients))
+                .flatMap(chunk -> {
+                    SendRequest first = requests.get(chunk.get(0));
+                    String mobileNumbers = chunk.stream()
+                            .map(index -> requests.get(index).mobileNumber)
+                            .collect(Collectors.joining(","));
+                    return sendUnicodeSMS(first.credentials, first.templateId, first.text, mobileNumbers)
+                            .doOnNext(response -> chunk.forEach(index -> responses[index] = response))
+                            .onErrorResume(e -> {
+                                log.error("CdacSendCoalescer:sendCoalesced::bulk call to " + chunk.size() + " numbers failed: " + e.getMessage());
+                                return Mono.empty();
+                            });
+                }, maxInFlight)
+                .then(Mono.fromSupplier(() -> {
+                    log.info("CdacSendCoalescer:sendCoalesced:: " + requests.size() + " messages sent in " + groups.size() + " groups");
+                    return Collections.unmodifiableList(Arrays.asList(responses));
+                }));
+    }
+
+    private Mono<String> sendUnicodeSMS(CdacCredentials credentials, String templateId, String text, String mobileNumber) {
+        return cdacService.sendUnicodeSMSAsync(
+                credentials.getUsername(),
+                credentials.getPassword(),
+                text,
+                credentials.getSenderId(),
+                mobileNumber,
+                credentials.getSecureKey(),
+                templateId);
+    }
+
+    private static class SendRequest {
+        private final CdacCredentials credentials;
+        private final String templateId;
+        private final String text;
+        private final String mobileNumber;
+
+        private SendRequest(CdacCredentials credentials, String templateId, String text, String mobileNumber) {
+            this.credentials = credentials;
+            this.templateId = templateId;
+            this.text = text;
+            this.mobileNumber = mobileNumber;
+        }
+
+        private List<String> groupKey() {
+            return Arrays.asList(credentials.getUsername(), credentials.getPassword(), credentials.getSenderId(),
+                    credentials.getSecureKey(), templateId, text);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.uci.adapter.cdac;
 
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import lombok.extern.slf4j.Slf4j;
 import messagerosa.core.model.XMessage;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
@@ -10,8 +13,13 @@ import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
@@ -27,9 +35,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
+@Slf4j
 @Service
 public class CdacService {
 
+    private final WebClient webClient;
+
+    private final String sendURL;
+
+    @Autowired
+    public CdacService(VendorHttpClientFactory httpClientFactory,
+                       @Value("${cdac.sms.sendURL:https://msdgweb.mgov.gov.in/esms/sendsmsrequestDLT}") String sendURL) {
+        this.webClient = httpClientFactory.getWebClient(HttpVendor.cdac);
+        this.sendURL = sendURL;
+    }
+
 //    @Value("${cdac.base.url}")
 //    private String baseUrl;
 
@@ -73,7 +93,9 @@ public class CdacService {
      * @see <a href="https://mgov.gov.in/msdp_sms_push.jsp">Return types code details</a>
      *
      * @param templateid :  templateId unique for each template message content
+     * @deprecated blocks the calling thread & builds a new http client per call, use {@link #sendUnicodeSMSAsync}
      */
+    @Deprecated
     public String sendUnicodeSMS(String username, String password, String message, String senderId, String mobileNumber, String secureKey, String templateid){
         String finalmessage = "";
         for(int i = 0 ; i< message.length();i++){
@@ -135,6 +157,41 @@ public class CdacService {
         return responseString;
     }
 
+    /**
+     * Send Unicode text SMS over the pooled cdac http client
+     * @param username : Department Login User Name
+     * @param password : Department Login Password
+     * @param message  : Unicode Message
+     * @param senderId : Department allocated SenderID
+     * @param mobileNumber : Bulk Mobile Number with comma separated e.g. '99XXXXXXX,99XXXXXXXX'
+     * @param secureKey : Department key generated by login to services portal
+     * @param templateid : templateId unique for each template message content
+     * @return response from Mobile Seva Gateway e.g. '402,MsgID = 150620161466003974245msdgsms', errors if the call fails
+     */
+    public Mono<String> sendUnicodeSMSAsync(String username, String password, String message, String senderId, String mobileNumber, String secureKey, String templateid) {
+        return Mono.fromCallable(() -> {
+                    String content = CdacRequestEncoder.encodeEntities(message);
+                    MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
+                    formData.add("bulkmobno", mobileNumber);
+                    formData.add("senderid", senderId);
+                    formData.add("content", content);
+                    formData.add("smsservicetype", "unicodemsg");
+                    formData.add("username", username);
+                    formData.add("password", CdacRequestEncoder.passwordDigest(username, password));
+                    formData.add("key", CdacRequestEncoder.requestKey(username, senderId, content, secureKey));
+                    formData.add("templateid", templateid);
+                    return formData;
+                })
+                .flatMap(formData -> webClient.post()
+                        .uri(sendURL)
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .body(BodyInserters.fromFormData(formData))
+                        .retrieve()
+                        .bodyToMono(String.class))
+                .map(response -> response.replace("\r", "").replace("\n", ""))
+                .doOnNext(response -> log.info("CdacService:sendUnicodeSMSAsync::response: " + response));
+    }
+
     protected static String hashGenerator(String userName, String senderId, String content, String secureKey) {
         // TODO Auto-generated method stub
         StringBuffer finalString=new StringBuffer();
@@ -0,0 +1,35 @@
+package com.uci.adapter.cdac;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import java.io.StringReader;
+
+/**
+ * Parses cdac tracking report xml, sharing one JAXB context across threads
+ */
+public class TrackDetailsParser {
+
+    private static final JAXBContext CONTEXT = createContext();
+
+    private TrackDetailsParser() {
+    }
+
+    /**
+     * Parse a tracking report
+     * @param xml
+     * @return
+     * @throws JAXBException
+     */
+    public static TrackDetails parse(String xml) throws JAXBException {
+        /* Context is thread safe, unmarshallers are not, and are cheap to create from a context */
+        return (TrackDetails) CONTEXT.createUnmarshaller().unmarshal(new StringReader(xml));
+    }
+
+    private static JAXBContext createContext() {
+        try {
+            return JAXBContext.newInstance(TrackDetails.class);
+        } catch (JAXBException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
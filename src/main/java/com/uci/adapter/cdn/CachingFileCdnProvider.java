@@ -0,0 +1,129 @@
+package com.uci.adapter.cdn;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.uci.adapter.media.MediaBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+
+/**
+ * Caches signed urls of a file cdn provider by file name, until the safety margin before they expire.
+ * Providers with no signed url validity are not cached.
+ */
+@Slf4j
+public class CachingFileCdnProvider implements FileCdnProvider {
+
+    private final FileCdnProvider delegate;
+
+    private final Cache<String, String> signedUrls;
+
+    /**
+     * @param delegate provider to cache
+     * @param maxSize max cached urls, least recently used are evicted first
+     * @param safetyMargin drop a url this long before it expires
+     */
+    public CachingFileCdnProvider(FileCdnProvider delegate, long maxSize, Duration safetyMargin) {
+        this.delegate = delegate;
+        Duration validity = delegate.getSignedUrlValidity();
+        if (validity != null && validity.compareTo(safetyMargin) > 0) {
+            this.signedUrls = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(validity.minus(safetyMargin))
+                    .recordStats()
+                    .build();
+            log.info("CachingFileCdnProvider:: caching signed urls of " + delegate.getClass().getSimpleName()
+                    + " for " + validity.minus(safetyMargin) + ", maxSize: " + maxSize);
+        } else {
+            this.signedUrls = null;
+        }
+    }
+
+    /**
+     * Get File signed url from name, cached
+     * @param name
+     * @return
+     */
+    @Override
+    public String getFileSignedUrl(String name) {
+        if (signedUrls == null || name == null || name.isEmpty()) {
+            return delegate.getFileSignedUrl(name);
+        }
+        /* Failed lookups return an empty url, which is not cached */
+        String url = signedUrls.get(name, key -> {
+            String signedUrl = delegate.getFileSignedUrl(key);
+            return signedUrl == null || signedUrl.isEmpty() ? null : signedUrl;
+        });
+        return url != null ? url : "";
+    }
+
+    @Override
+    public String uploadFileFromPath(String filePath, String name) {
+        invalidate(name);
+        return delegate.uploadFileFromPath(filePath, name);
+    }
+
+    @Override
+    public String uploadFileFromInputStream(InputStream in, String name) throws IOException {
+        invalidate(name);
+        return delegate.uploadFileFromInputStream(in, name);
+    }
+
+    @Override
+    public String uploadFileFromBuffer(MediaBuffer buffer, String name) throws IOException {
+        invalidate(name);
+        return delegate.uploadFileFromBuffer(buffer, name);
+    }
+
+    @Override
+    public Mono<String> uploadFileFromBufferAsync(MediaBuffer buffer, String name) {
+        invalidate(name);
+        return delegate.uploadFileFromBufferAsync(buffer, name);
+    }
+
+    @Override
+    public Duration getSignedUrlValidity() {
+        return delegate.getSignedUrlValidity();
+    }
+
+    /**
+     * Get hit/miss/eviction stats of the signed url cache, empty stats if not cached
+     * @return
+     */
+    public CacheStats getStats() {
+        return signedUrls != null ? signedUrls.stats() : CacheStats.empty();
+    }
+
+    /**
+     * Report the signed url cache's size, hit/miss & eviction metrics to a meter registry, if urls are cached
+     * @param registry
+     * @param cacheName
+     */
+    public void bindMetrics(MeterRegistry registry, String cacheName) {
+        if (signedUrls != null) {
+            CaffeineCacheMetrics.monitor(registry, signedUrls, cacheName,
+                    Tags.of("provider", delegate.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Get the wrapped provider
+     * @return
+     */
+    public FileCdnProvider getDelegate() {
+        return delegate;
+    }
+
+    private void invalidate(String name) {
+        if (signedUrls != null && name != null) {
+            signedUrls.invalidate(name);
+        }
+    }
+}
@@ -3,9 +3,16 @@ package com.uci.adapter.cdn;
 import com.uci.adapter.cdn.service.AzureBlobService;
 import com.uci.adapter.cdn.service.MinioClientService;
 import com.uci.adapter.cdn.service.SunbirdCloudMediaService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Component
 public class FileCdnFactory {
     @Autowired
@@ -17,7 +24,32 @@ public class FileCdnFactory {
     @Autowired
     SunbirdCloudMediaService sunbirdCloudMediaService;
 
+    @Autowired
+    ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${cdn.signedUrl.cache.maxSize:#{10000}}")
+    private long signedUrlCacheMaxSize;
+
+    @Value("${cdn.signedUrl.cache.safetyMarginSeconds:#{300}}")
+    private long signedUrlSafetyMarginSeconds;
+
+    private final Map<FileCdnProvider, CachingFileCdnProvider> cachingProviders = new ConcurrentHashMap<>();
+
+    /**
+     * Get the selected file cdn provider, with its signed urls cached.
+     * Cache metrics are reported as "cdn.signedUrls" when a meter registry is available.
+     * @return
+     */
     public FileCdnProvider getFileCdnProvider() {
+        return cachingProviders.computeIfAbsent(getSelectedProvider(), provider -> {
+            CachingFileCdnProvider cachingProvider = new CachingFileCdnProvider(provider,
+                    signedUrlCacheMaxSize, Duration.ofSeconds(signedUrlSafetyMarginSeconds));
+            meterRegistry.ifAvailable(registry -> cachingProvider.bindMetrics(registry, "cdn.signedUrls"));
+            return cachingProvider;
+        });
+    }
+
+    private FileCdnProvider getSelectedProvider() {
         String selected = System.getenv("SELECTED_FILE_CDN");
         if(selected != null && selected.equals("sunbird")) {
             return sunbirdCloudMediaService;
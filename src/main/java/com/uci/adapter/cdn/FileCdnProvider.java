@@ -1,9 +1,68 @@
 package com.uci.adapter.cdn;
 
+import com.uci.adapter.media.MediaBuffer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 
 public interface FileCdnProvider {
     public String getFileSignedUrl(String name);
 
     public String uploadFileFromPath(String filePath, String name);
+
+    /**
+     * Upload file from an input stream, read in chunks so the file is never held in memory.
+     * By default the stream is copied to a temp file which is uploaded & deleted.
+     * @param in stream to upload, read fully but not closed
+     * @param name
+     * @return signed url, empty string if the upload failed
+     * @throws IOException if reading the stream fails, e.g. when it exceeds a size limit. Nothing is uploaded then.
+     */
+    public default String uploadFileFromInputStream(InputStream in, String name) throws IOException {
+        int extension = name.lastIndexOf('.');
+        Path tempFile = Files.createTempFile("uci-media-", extension >= 0 ? name.substring(extension) : "");
+        try {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return uploadFileFromPath(tempFile.toString(), name);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Upload file from a media buffer. By default the buffer's file is uploaded, written first if the media is in memory.
+     * @param buffer
+     * @param name
+     * @return signed url, empty string if the upload failed
+     * @throws IOException if writing the buffer to a file fails
+     */
+    public default String uploadFileFromBuffer(MediaBuffer buffer, String name) throws IOException {
+        return uploadFileFromPath(buffer.toPath().toString(), name);
+    }
+
+    /**
+     * Upload file from a media buffer without blocking the caller. By default the blocking upload runs on a
+     * bounded elastic thread. The buffer must stay open until the returned mono terminates.
+     * @param buffer
+     * @param name
+     * @return signed url, empty string if the upload failed
+     */
+    public default Mono<String> uploadFileFromBufferAsync(MediaBuffer buffer, String name) {
+        return Mono.fromCallable(() -> uploadFileFromBuffer(buffer, name))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Get how long urls returned by getFileSignedUrl stay valid
+     * @return validity, zero if they should not be cached
+     */
+    public default Duration getSignedUrlValidity() {
+        return Duration.ZERO;
+    }
 }
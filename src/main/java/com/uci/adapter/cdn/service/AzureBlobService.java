@@ -1,13 +1,20 @@
 package com.uci.adapter.cdn.service;
 
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerAsyncClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
 import com.azure.storage.blob.sas.BlobContainerSasPermission;
 import com.azure.storage.blob.sas.BlobSasPermission;
 import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.blob.specialized.BlockBlobClient;
 import com.uci.adapter.cdn.FileCdnProvider;
+import com.uci.adapter.media.MediaBuffer;
 import com.uci.utils.bot.util.FileUtil;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,6 +22,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -22,11 +31,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
@@ -44,8 +59,26 @@ public class AzureBlobService implements FileCdnProvider {
     @Value("${spring.azure.blob.store.container.name}")
     private String azureContainer;
 
+    @Value("${spring.azure.blob.store.upload.blockSizeBytes:#{4194304}}")
+    private long uploadBlockSize;
+
+    @Value("${spring.azure.blob.store.upload.maxConcurrency:#{4}}")
+    private int uploadMaxConcurrency;
+
+    @Value("${spring.azure.blob.store.upload.maxSingleUploadSizeBytes:#{8388608}}")
+    private long uploadMaxSingleUploadSize;
+
+    /* Blob read sas tokens are valid for this long */
+    @Value("${spring.azure.blob.store.sas.expiryDays:#{30}}")
+    private long sasExpiryDays;
+
+    /* Signed urls are reused until this long before their sas token expires */
+    @Value("${spring.azure.blob.store.sas.cacheMarginHours:#{24}}")
+    private long sasCacheMarginHours;
+
     private BlobServiceClient serviceClient;
     private BlobContainerClient containerClient;
+    private BlobContainerAsyncClient containerAsyncClient;
 
     /**
      * Load default empty object
@@ -59,6 +92,10 @@ public class AzureBlobService implements FileCdnProvider {
         if(this.containerClient == null) {
             this.containerClient = serviceClient.getBlobContainerClient(azureContainer);
         }
+        if(this.containerAsyncClient == null) {
+            this.containerAsyncClient = new BlobServiceClientBuilder().connectionString(connectionStr).buildAsyncClient()
+                    .getBlobContainerAsyncClient(azureContainer);
+        }
     }
 
     /**
@@ -101,7 +138,7 @@ public class AzureBlobService implements FileCdnProvider {
                 // Get a reference to a blob
                 BlobClient blobClient = containerClient.getBlobClient(name);
                 // Upload the blob
-                blobClient.uploadFromFile(filePath);
+                blobClient.uploadFromFile(filePath, getParallelTransferOptions(), null, null, null, null, null);
 
                 // Return blob name
                 return getFileSignedUrl(blobClient.getBlobName());
@@ -114,6 +151,103 @@ public class AzureBlobService implements FileCdnProvider {
         return "";
     }
 
+    /**
+     * Upload File from an input stream to Azure Blob Storage, staged block by block without a temp file.
+     * The block list is only committed once the stream was read fully, so a failed read leaves no blob behind,
+     * azure discards uncommitted blocks.
+     *
+     * @param in
+     * @param name
+     * @return signed url, empty string if no container client
+     * @throws IOException if reading the stream fails
+     */
+    @Override
+    public String uploadFileFromInputStream(InputStream in, String name) throws IOException {
+        /* Load default objects */
+        loadDefaultObjects();
+
+        if(this.containerClient == null) {
+            return "";
+        }
+        BlockBlobClient blockBlobClient = containerClient.getBlobClient(name).getBlockBlobClient();
+        List<String> blockIds = new ArrayList<>();
+        byte[] block = new byte[(int) uploadBlockSize];
+        int read;
+        while ((read = in.readNBytes(block, 0, block.length)) > 0) {
+            /* Block ids of a blob must all have the same length */
+            String blockId = Base64.getEncoder().encodeToString(String.format("%06d", blockIds.size()).getBytes(StandardCharsets.UTF_8));
+            blockBlobClient.stageBlock(blockId, new ByteArrayInputStream(block, 0, read), read);
+            blockIds.add(blockId);
+        }
+        blockBlobClient.commitBlockList(blockIds, true);
+        return getFileSignedUrl(name);
+    }
+
+    /**
+     * Upload File from a media buffer to Azure Blob Storage, without a temp file for in memory media
+     *
+     * @param buffer
+     * @param name
+     * @return signed url, empty string if no container client
+     * @throws IOException
+     */
+    @Override
+    public String uploadFileFromBuffer(MediaBuffer buffer, String name) throws IOException {
+        /* Load default objects */
+        loadDefaultObjects();
+
+        if(this.containerClient == null) {
+            return "";
+        }
+        BlobClient blobClient = containerClient.getBlobClient(name);
+        try (InputStream in = buffer.openStream()) {
+            blobClient.uploadWithResponse(new BlobParallelUploadOptions(in, buffer.size())
+                    .setParallelTransferOptions(getParallelTransferOptions()), null, Context.NONE);
+        }
+        return getFileSignedUrl(blobClient.getBlobName());
+    }
+
+    /**
+     * Upload File from a media buffer to Azure Blob Storage without blocking, blocks of the configured size
+     * are staged concurrently & committed once all are uploaded
+     *
+     * @param buffer
+     * @param name
+     * @return signed url, empty string if no container client
+     */
+    @Override
+    public Mono<String> uploadFileFromBufferAsync(MediaBuffer buffer, String name) {
+        /* Load default objects */
+        loadDefaultObjects();
+
+        if(this.containerAsyncClient == null) {
+            return Mono.just("");
+        }
+        BlobAsyncClient blobAsyncClient = containerAsyncClient.getBlobAsyncClient(name);
+        /* Deferred, so a resubscription reads the buffer from the start */
+        Flux<ByteBuffer> data = Flux.defer(() -> Flux.just(buffer.toByteBuffer()));
+        return blobAsyncClient.uploadWithResponse(new BlobParallelUploadOptions(data)
+                        .setParallelTransferOptions(getParallelTransferOptions()))
+                .map(response -> getFileSignedUrl(name))
+                .doOnError(e -> log.error("Exception in azure uploadFileFromBufferAsync: " + e.getMessage()));
+    }
+
+    /**
+     * Signed urls carry a blob sas token valid for expiry days, they are reused until the cache margin before that
+     * @return
+     */
+    @Override
+    public Duration getSignedUrlValidity() {
+        return Duration.ofDays(sasExpiryDays).minusHours(sasCacheMarginHours);
+    }
+
+    private ParallelTransferOptions getParallelTransferOptions() {
+        return new ParallelTransferOptions()
+                .setBlockSizeLong(uploadBlockSize)
+                .setMaxConcurrency(uploadMaxConcurrency)
+                .setMaxSingleUploadSizeLong(uploadMaxSingleUploadSize);
+    }
+
     /**
      * Generate SAS token
      * @param blobClient
@@ -121,7 +255,7 @@ public class AzureBlobService implements FileCdnProvider {
      */
     public String generateBlobSASToken(BlobClient blobClient) {
         // Generate a sas using a blob client
-        OffsetDateTime expiryTime = OffsetDateTime.now().plusMonths(1);
+        OffsetDateTime expiryTime = OffsetDateTime.now().plusDays(sasExpiryDays);
         BlobSasPermission blobSasPermission = new BlobSasPermission().setReadPermission(true);
         BlobServiceSasSignatureValues serviceSasValues = new BlobServiceSasSignatureValues(expiryTime,
                 blobSasPermission);
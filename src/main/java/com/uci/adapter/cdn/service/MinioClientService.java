@@ -2,21 +2,23 @@ package com.uci.adapter.cdn.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uci.adapter.utils.JsonCodecs;
 import com.inversoft.error.Errors;
 import com.inversoft.rest.ClientResponse;
 import com.uci.adapter.cdn.FileCdnProvider;
+import com.uci.adapter.media.MediaBuffer;
 import com.uci.utils.cache.service.RedisCacheService;
 import io.fusionauth.client.FusionAuthClient;
 import io.fusionauth.domain.api.LoginRequest;
 import io.fusionauth.domain.api.LoginResponse;
 import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
 import io.minio.UploadObjectArgs;
 import io.minio.credentials.StaticProvider;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
-import org.json.JSONObject;
 import org.json.XML;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -24,14 +26,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.URLConnection;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Setter
 @Getter
@@ -59,16 +66,46 @@ public class MinioClientService implements FileCdnProvider {
     @Value("${cdn.minio.fa.url}")
     private String minioFAUrl;
 
+    @Value("${cdn.minio.sts.durationSeconds:#{36000}}")
+    private long stsDurationSeconds;
+
+    /* Refresh in background once the session expires within this time */
+    @Value("${cdn.minio.sts.refreshAheadSeconds:#{1800}}")
+    private long stsRefreshAheadSeconds;
+
+    /* Refresh before use once the session expires within this time */
+    @Value("${cdn.minio.sts.expiryMarginSeconds:#{60}}")
+    private long stsExpiryMarginSeconds;
+
+    /* Skip background refreshes for this time after a refresh fails */
+    @Value("${cdn.minio.sts.retryBackoffSeconds:#{30}}")
+    private long stsRetryBackoffSeconds;
+
     @Autowired
     private RedisCacheService redisCacheService;
     private FusionAuthClient fusionAuth;
     private LoginRequest loginRequest;
 
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final ObjectMapper mapper = JsonCodecs.mapper();
+
+    private final OkHttpClient stsClient = new OkHttpClient().newBuilder().connectTimeout(90, TimeUnit.SECONDS)
+            .writeTimeout(90, TimeUnit.SECONDS).readTimeout(90, TimeUnit.SECONDS).build();
+
+    private final AtomicReference<MinioSession> session = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<MinioSession>> refreshing = new AtomicReference<>();
+    private volatile long lastRefreshFailedAt;
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "minio-session-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Load default empty object
      */
     private void loadDefaultObjects() {
-        log.info("Minio details, loginID: " + minioLoginId + ", password: " + minioPassword + ", appId: " + minioAppId + ", bucketId: " + minioBucketId + ", faKey: " + minioFAKey + ", faUrl: " + minioFAUrl + ", url: " + minioUrl);
+        log.info("Minio details, loginID: " + minioLoginId + ", appId: " + minioAppId + ", bucketId: " + minioBucketId + ", faUrl: " + minioFAUrl + ", url: " + minioUrl);
         UUID appID = null;
         if (minioAppId != null) {
             appID = UUID.fromString(minioAppId);
@@ -160,9 +197,6 @@ public class MinioClientService implements FileCdnProvider {
      */
     public String uploadFileFromPath(String filePath, String name) {
         try {
-            /* Load default objects */
-            loadDefaultObjects();
-
             MinioClient minioClient = getMinioClient();
             if (minioClient != null) {
                 log.info("uploadFileFromPath:: filePath: " + filePath + " Name : " + name);
@@ -185,21 +219,58 @@ public class MinioClientService implements FileCdnProvider {
     }
 
     /**
-     * Get Minio Client
+     * Upload file from a media buffer, streamed from memory or the mapped file
+     *
+     * @param buffer
+     * @param name
+     * @return
+     */
+    @Override
+    public String uploadFileFromBuffer(MediaBuffer buffer, String name) {
+        try {
+            MinioClient minioClient = getMinioClient();
+            if (minioClient != null) {
+                log.info("uploadFileFromBuffer:: size: " + buffer.size() + " Name : " + name);
+                PutObjectArgs.Builder args = PutObjectArgs.builder()
+                        .bucket(this.minioBucketId)
+                        .object(name);
+                String contentType = URLConnection.guessContentTypeFromName(name);
+                if (contentType != null) {
+                    args.contentType(contentType);
+                }
+                try (InputStream in = buffer.openStream()) {
+                    minioClient.putObject(args.stream(in, buffer.size(), -1).build());
+                }
+                return getFileSignedUrl(name);
+            } else {
+                log.error("uploadFileFromBuffer:: Minio client is null : " + minioClient);
+            }
+        } catch (Exception ex) {
+            log.error("Exception in minio uploadFileFromBuffer: " + ex.getMessage());
+        }
+
+        return "";
+    }
+
+    /**
+     * Get Minio Client, reused until shortly before its sts session expires
      *
      * @return
      */
     private MinioClient getMinioClient() {
         if (this.minioUrl != null) {
             try {
-                StaticProvider provider = getMinioCredentialsProvider();
-                log.info("getMinioClient:: provider: " + provider + ", url: " + this.minioUrl);
-                if (provider != null) {
-                    return MinioClient.builder()
-                            .endpoint(this.minioUrl)
-                            .credentialsProvider(provider)
-                            .build();
+                long now = System.currentTimeMillis();
+                MinioSession current = session.get();
+                if (current != null && now < current.expiresAt - TimeUnit.SECONDS.toMillis(stsExpiryMarginSeconds)) {
+                    if (now >= current.expiresAt - TimeUnit.SECONDS.toMillis(stsRefreshAheadSeconds)
+                            && now >= lastRefreshFailedAt + TimeUnit.SECONDS.toMillis(stsRetryBackoffSeconds)) {
+                        refreshSession(true);
+                    }
+                    return current.client;
                 }
+                MinioSession refreshed = refreshSession(false).get(90, TimeUnit.SECONDS);
+                return refreshed != null ? refreshed.client : null;
             } catch (Exception e) {
                 log.error("Exception in getMinioClient with cache: " + e.getMessage());
             }
@@ -208,68 +279,132 @@ public class MinioClientService implements FileCdnProvider {
     }
 
     /**
-     * Get Credentials Provider for Minio Client
+     * Start a session refresh, or join the one in progress
+     *
+     * @param background run on the refresh thread instead of the caller
+     * @return refreshed session, null if it could not be created
+     */
+    private CompletableFuture<MinioSession> refreshSession(boolean background) {
+        CompletableFuture<MinioSession> pending = new CompletableFuture<>();
+        if (!refreshing.compareAndSet(null, pending)) {
+            CompletableFuture<MinioSession> inProgress = refreshing.get();
+            return inProgress != null ? inProgress : refreshSession(background);
+        }
+        Runnable refresh = () -> {
+            MinioSession created = null;
+            try {
+                created = createSession();
+                if (created != null) {
+                    session.set(created);
+                }
+            } catch (Exception e) {
+                log.error("Exception in minio refreshSession: " + e.getMessage());
+            } finally {
+                lastRefreshFailedAt = created != null ? 0 : System.currentTimeMillis();
+                refreshing.set(null);
+                pending.complete(created);
+            }
+        };
+        if (background) {
+            refreshExecutor.execute(refresh);
+        } else {
+            refresh.run();
+        }
+        return pending;
+    }
+
+    /**
+     * Create minio client with new sts credentials
      *
      * @return
      */
-    private StaticProvider getMinioCredentialsProvider() {
+    private MinioSession createSession() {
+        loadDefaultObjects();
+        StsCredentials credentials = getMinioCredentials();
+        log.info("createSession:: credentials found: " + (credentials != null) + ", url: " + this.minioUrl);
+        if (credentials == null) {
+            return null;
+        }
+        MinioClient client = MinioClient.builder()
+                .endpoint(this.minioUrl)
+                .credentialsProvider(credentials.provider)
+                .build();
+        return new MinioSession(client, credentials.expiresAt);
+    }
+
+    /**
+     * Get sts credentials for Minio Client
+     *
+     * @return
+     */
+    private StsCredentials getMinioCredentials() {
         try {
             String token = getFusionAuthToken();
-            log.info("getMinioCredentialsProvider:: token : " + token);
             if (!token.isEmpty()) {
-                OkHttpClient client = new OkHttpClient().newBuilder().connectTimeout(90, TimeUnit.SECONDS)
-                        .writeTimeout(90, TimeUnit.SECONDS).readTimeout(90, TimeUnit.SECONDS).build();
-                MediaType mediaType = MediaType.parse("application/json");
-
                 UriComponents builder = UriComponentsBuilder.fromHttpUrl(this.minioUrl)
                         .queryParam("Action", "AssumeRoleWithWebIdentity")
-                        .queryParam("DurationSeconds", 36000) //duration: 10 Hours
+                        .queryParam("DurationSeconds", stsDurationSeconds)
                         .queryParam("WebIdentityToken", token)
                         .queryParam("Version", "2011-06-15")
                         .build();
                 URI expanded = URI.create(builder.toUriString());
-                RequestBody body = RequestBody.create(mediaType, "");
+                RequestBody body = RequestBody.create(JSON, "");
                 Request request = new Request.Builder().url(expanded.toString()).method("POST", body)
                         .addHeader("Content-Type", "application/json").build();
 
-                try {
-                    Response callResponse = client.newCall(request).execute();
+                long requestedAt = System.currentTimeMillis();
+                try (Response callResponse = stsClient.newCall(request).execute()) {
                     String response = callResponse.body().string();
-                    log.info("Minio getMinioCredentialsProvider Response::" + response);
-                    JSONObject xmlJSONObj = XML.toJSONObject(response);
-                    String jsonPrettyPrintString = xmlJSONObj.toString(4);
-
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode node = mapper.readTree(jsonPrettyPrintString);
+                    JsonNode node = mapper.readTree(XML.toJSONObject(response).toString());
                     JsonNode credentials = node.path("AssumeRoleWithWebIdentityResponse").path("AssumeRoleWithWebIdentityResult").path("Credentials");
-                    if (credentials != null && credentials.get("SessionToken") != null
+                    if (credentials.get("SessionToken") != null
                             && credentials.get("AccessKeyId") != null && credentials.get("SecretAccessKey") != null) {
                         String sessionToken = credentials.get("SessionToken").asText();
                         String accessKey = credentials.get("AccessKeyId").asText();
                         String secretAccessKey = credentials.get("SecretAccessKey").asText();
+                        long expiresAt = getExpiresAt(credentials.path("Expiration").asText(""), requestedAt);
 
-                        log.info("getMinioCredentialsProvider:: sessionToken: " + sessionToken + ", accessKey: " + accessKey + ", secretAccessKey: " + secretAccessKey);
+                        log.info("getMinioCredentials:: accessKey: " + accessKey + ", expiresAt: " + Instant.ofEpochMilli(expiresAt));
 
                         if (!accessKey.isEmpty() && !secretAccessKey.isEmpty() && !sessionToken.isEmpty()) {
-                            return new StaticProvider(accessKey, secretAccessKey, sessionToken);
+                            return new StsCredentials(new StaticProvider(accessKey, secretAccessKey, sessionToken), expiresAt);
                         }
                     } else {
-                        if (node.path("ErrorResponse") != null
-                                && node.path("ErrorResponse").path("Error") != null
-                                && node.path("ErrorResponse").path("Error").path("Message") != null) {
-                            log.error("Error when getting credentials for minio client: " + node.path("ErrorResponse").path("Error").path("Message").asText());
-                        }
+                        log.error("Error when getting credentials for minio client: " + node.path("ErrorResponse").path("Error").path("Message").asText());
                     }
                 } catch (IOException e) {
-                    log.error("IOException in getMinioCredentialsProvider for request call: " + e.getMessage());
+                    log.error("IOException in getMinioCredentials for request call: " + e.getMessage());
                 }
             }
         } catch (Exception e) {
-            log.error("Exception in getMinioCredentialsProvider: " + e.getMessage());
+            log.error("Exception in getMinioCredentials: " + e.getMessage());
         }
         return null;
     }
 
+    /**
+     * Get expiry time of sts credentials, the requested duration if the response has none
+     *
+     * @param expiration iso-8601 expiration from the sts response
+     * @param requestedAt
+     * @return
+     */
+    private long getExpiresAt(String expiration, long requestedAt) {
+        if (!expiration.isEmpty()) {
+            try {
+                return Instant.parse(expiration).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                log.error("Invalid minio credentials expiration: " + expiration);
+            }
+        }
+        return requestedAt + TimeUnit.SECONDS.toMillis(stsDurationSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
     /**
      * Get Fustion Auth Token
      *
@@ -287,4 +422,24 @@ public class MinioClientService implements FileCdnProvider {
         }
         return token;
     }
+
+    private static class MinioSession {
+        private final MinioClient client;
+        private final long expiresAt;
+
+        private MinioSession(MinioClient client, long expiresAt) {
+            this.client = client;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class StsCredentials {
+        private final StaticProvider provider;
+        private final long expiresAt;
+
+        private StsCredentials(StaticProvider provider, long expiresAt) {
+            this.provider = provider;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
@@ -10,10 +10,13 @@ import org.sunbird.cloud.storage.factory.StorageServiceFactory;
 import scala.Option;
 
 import java.io.InputStream;
+import java.time.Duration;
 
 @Slf4j
 @Service
 public class SunbirdCloudMediaService implements FileCdnProvider {
+    private static final int SIGNED_URL_EXPIRY_SECONDS = 36000;
+
     private BaseStorageService service;
 
     @Value("${sunbird.cloud.media.storage.type}")
@@ -82,7 +85,7 @@ public class SunbirdCloudMediaService implements FileCdnProvider {
 
             return this.service.getSignedURL(mediaStorageContainer,
                     name,
-                    getIntegerObject(36000),
+                    getIntegerObject(SIGNED_URL_EXPIRY_SECONDS),
                     getStringObject("r")
             );
         } catch(Exception ex) {
@@ -91,6 +94,11 @@ public class SunbirdCloudMediaService implements FileCdnProvider {
         return "";
     }
 
+    @Override
+    public Duration getSignedUrlValidity() {
+        return Duration.ofSeconds(SIGNED_URL_EXPIRY_SECONDS);
+    }
+
     private Option<Object> getBooleanObject(Boolean value) {
         return new Option<Object>() {
             @Override
@@ -0,0 +1,30 @@
+package com.uci.adapter.firebase.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.charset.StandardCharsets;
+
+@Getter
+@Setter
+public class FirebaseCredentials {
+    private String serviceKey;
+    private String serviceKeyHash;
+
+    /**
+     * Parse firebase credentials, null if service key is missing
+     * @param credentials
+     * @return
+     */
+    public static FirebaseCredentials from(JsonNode credentials) {
+        if (credentials == null || credentials.path("serviceKey").isMissingNode()) {
+            return null;
+        }
+        FirebaseCredentials firebaseCredentials = new FirebaseCredentials();
+        firebaseCredentials.setServiceKey(credentials.path("serviceKey").toString());
+        firebaseCredentials.setServiceKeyHash(Hashing.sha256().hashString(firebaseCredentials.getServiceKey(), StandardCharsets.UTF_8).toString());
+        return firebaseCredentials;
+    }
+}
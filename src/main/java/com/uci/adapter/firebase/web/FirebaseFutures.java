@@ -0,0 +1,35 @@
+package com.uci.adapter.firebase.web;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+import reactor.core.publisher.Mono;
+
+public class FirebaseFutures {
+
+    private FirebaseFutures() {
+    }
+
+    /**
+     * Bridge an ApiFuture to Mono, completing on the thread which completes the future
+     *
+     * @param future
+     * @param <T>
+     * @return
+     */
+    public static <T> Mono<T> toMono(ApiFuture<T> future) {
+        return Mono.create(sink -> {
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                public void onSuccess(T result) {
+                    sink.success(result);
+                }
+
+                public void onFailure(Throwable t) {
+                    sink.error(t);
+                }
+            }, MoreExecutors.directExecutor());
+            sink.onCancel(() -> future.cancel(false));
+        });
+    }
+}
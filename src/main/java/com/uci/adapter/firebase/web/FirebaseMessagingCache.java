@@ -0,0 +1,225 @@
+package com.uci.adapter.firebase.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.uci.adapter.cache.AdapterCredentialCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of FirebaseMessaging handles by adapter id.
+ *
+ * An entry is rebuilt when the service key hash of the adapter changes (key rotation).
+ * Sends hold a reference on the entry they use, the underlying FirebaseApp is deleted once its entry
+ * was replaced or evicted & the last send using it terminated. Every entry gets its own app name,
+ * so a new entry never picks up an app that is being deleted.
+ */
+@Slf4j
+@Component
+public class FirebaseMessagingCache {
+
+    private final AdapterCredentialCache credentialCache;
+
+    private final Cache<String, MessagingEntry> cache;
+
+    private final List<String> warmupAdapterIds;
+
+    private final Scheduler fcmScheduler;
+
+    private final AtomicLong appSequence = new AtomicLong();
+
+    @Autowired
+    public FirebaseMessagingCache(AdapterCredentialCache credentialCache,
+                                  @Qualifier("fcmScheduler") Scheduler fcmScheduler,
+                                  @Value("${fcm.messaging.cache.maxSize:#{100}}") long maxSize,
+                                  @Value("${fcm.messaging.cache.expireAfterAccessMinutes:#{60}}") long expireAfterAccessMinutes,
+                                  @Value("${fcm.messaging.cache.warmupAdapterIds:#{T(java.util.Collections).emptyList()}}") List<String> warmupAdapterIds) {
+        this.credentialCache = credentialCache;
+        this.warmupAdapterIds = warmupAdapterIds;
+        this.fcmScheduler = fcmScheduler;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .removalListener((String adapterId, MessagingEntry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        log.info("FirebaseMessagingCache:removal:: adapterId: " + adapterId + ", app: " + entry.app.getName() + ", cause: " + cause);
+                        release(entry);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Send with the FirebaseMessaging of an adapter, its app is not deleted before the send terminates.
+     * The messaging handle is built off the calling thread on a miss or key change.
+     * @param adapterId
+     * @param credentials
+     * @param send
+     * @return
+     */
+    public <T> Mono<T> withMessaging(String adapterId, FirebaseCredentials credentials, Function<FirebaseMessaging, Mono<T>> send) {
+        return Mono.usingWhen(acquire(adapterId, credentials),
+                entry -> send.apply(entry.messaging),
+                entry -> Mono.fromRunnable(() -> release(entry)));
+    }
+
+    /**
+     * Send many with the FirebaseMessaging of an adapter, its app is not deleted before the sends terminate.
+     * @param adapterId
+     * @param credentials
+     * @param send
+     * @return
+     */
+    public <T> Flux<T> withMessagingMany(String adapterId, FirebaseCredentials credentials, Function<FirebaseMessaging, Flux<T>> send) {
+        return Flux.usingWhen(acquire(adapterId, credentials),
+                entry -> send.apply(entry.messaging),
+                entry -> Mono.fromRunnable(() -> release(entry)));
+    }
+
+    /**
+     * Drop the cached messaging handle of an adapter
+     * @param adapterId
+     */
+    public void invalidate(String adapterId) {
+        cache.invalidate(adapterId);
+    }
+
+    /**
+     * Build messaging handles of configured adapters once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmup() {
+        if (warmupAdapterIds == null || warmupAdapterIds.isEmpty()) {
+            return;
+        }
+        Flux.fromIterable(warmupAdapterIds)
+                .flatMap(adapterId -> credentialCache.getCredentials(adapterId, FirebaseCredentials.class, FirebaseCredentials::from)
+                        .flatMap(credentials -> withMessaging(adapterId, credentials, messaging -> Mono.empty()))
+                        .doOnError(e -> log.error("FirebaseMessagingCache:warmup::Exception for adapterId " + adapterId + ": " + e.getMessage()))
+                        .onErrorResume(e -> Mono.empty()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    /**
+     * Get the entry of an adapter with a reference held, replacing it if the service key changed
+     * @param adapterId
+     * @param credentials
+     * @return
+     */
+    private Mono<MessagingEntry> acquire(String adapterId, FirebaseCredentials credentials) {
+        return Mono.defer(() -> {
+            MessagingEntry entry = cache.getIfPresent(adapterId);
+            if (entry != null && entry.serviceKeyHash.equals(credentials.getServiceKeyHash()) && entry.retain()) {
+                return Mono.just(entry);
+            }
+            /* Entries in the map still hold the cache's reference, so retaining them inside compute succeeds */
+            return Mono.fromCallable(() -> {
+                        MessagingEntry[] acquired = new MessagingEntry[1];
+                        cache.asMap().compute(adapterId, (key, existing) -> {
+                            MessagingEntry current = existing;
+                            if (current == null || !current.serviceKeyHash.equals(credentials.getServiceKeyHash()) || !current.retain()) {
+                                current = create(adapterId, credentials);
+                                current.retain();
+                            }
+                            acquired[0] = current;
+                            return current;
+                        });
+                        return acquired[0];
+                    })
+                    .subscribeOn(fcmScheduler);
+        });
+    }
+
+    /**
+     * Drop a reference on an entry, deleting its app with the last one
+     * @param entry
+     */
+    private void release(MessagingEntry entry) {
+        if (entry.refs.decrementAndGet() == 0) {
+            log.info("FirebaseMessagingCache:release:: deleting app: " + entry.app.getName());
+            deleteApp(entry.app);
+        }
+    }
+
+    private MessagingEntry create(String adapterId, FirebaseCredentials credentials) {
+        String appName = adapterId + "-" + credentials.getServiceKeyHash().substring(0, 12) + "-" + appSequence.incrementAndGet();
+        FirebaseApp app = FirebaseApp.initializeApp(buildOptions(credentials.getServiceKey()), appName);
+        log.info("FirebaseMessagingCache:create:: adapterId: " + adapterId + ", app: " + appName);
+        return new MessagingEntry(credentials.getServiceKeyHash(), app, FirebaseMessaging.getInstance(app));
+    }
+
+    private FirebaseOptions buildOptions(String serviceKey) {
+        try (InputStream serviceAccountStream = new ByteArrayInputStream(serviceKey.getBytes(StandardCharsets.UTF_8))) {
+            return FirebaseOptions.builder()
+                    .setCredentials(GoogleCredentials.fromStream(serviceAccountStream))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException("Invalid firebase service key: " + e.getMessage(), e);
+        }
+    }
+
+    private void deleteApp(FirebaseApp app) {
+        try {
+            app.delete();
+        } catch (Exception e) {
+            log.error("FirebaseMessagingCache:deleteApp::Exception: " + e.getMessage());
+        }
+    }
+
+    private static class MessagingEntry {
+        private final String serviceKeyHash;
+        private final FirebaseApp app;
+        private final FirebaseMessaging messaging;
+        /* The cache's reference & one per send in progress */
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private MessagingEntry(String serviceKeyHash, FirebaseApp app, FirebaseMessaging messaging) {
+            this.serviceKeyHash = serviceKeyHash;
+            this.app = app;
+            this.messaging = messaging;
+        }
+
+        /**
+         * @return false if the entry was already released by everyone, its app is deleted
+         */
+        private boolean retain() {
+            int current;
+            do {
+                current = refs.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
+}
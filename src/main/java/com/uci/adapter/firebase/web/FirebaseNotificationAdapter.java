@@ -1,15 +1,10 @@
 package com.uci.adapter.firebase.web;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.google.api.core.ApiFuture;
-import com.google.api.core.ApiFutureCallback;
-import com.google.api.core.ApiFutures;
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.firebase.FirebaseApp;
-import com.google.firebase.FirebaseOptions;
+import com.google.common.collect.Lists;
 import com.google.firebase.messaging.*;
+import com.uci.adapter.cache.AdapterCredentialCache;
+import com.uci.adapter.cache.RedisPipelinedWriter;
 import com.uci.adapter.firebase.web.inbound.FirebaseWebMessage;
 import com.uci.adapter.firebase.web.inbound.FirebaseWebReport;
 import com.uci.adapter.provider.factory.AbstractProvider;
@@ -28,10 +23,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.xml.bind.JAXBException;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.function.Function;
@@ -50,6 +43,16 @@ public class FirebaseNotificationAdapter extends AbstractProvider implements IPr
     private String notificationKeyEnable;
     private long fcmAndroidConfigTTl;
     private RedisCacheService redisCacheService;
+    private AdapterCredentialCache credentialCache;
+    private FirebaseMessagingCache firebaseMessagingCache;
+    private FirebaseNotificationService firebaseNotificationService;
+    private RedisPipelinedWriter correlationWriter;
+    private int bulkChunkSize;
+    private int bulkMaxConcurrency;
+    private long correlationTimeoutMs;
+
+    /* FCM accepts at most 500 messages per batch send */
+    private static final int FCM_MAX_BATCH_SIZE = 500;
 
     /**
      * Convert Firebase Message Object to XMessage Object
@@ -142,27 +145,20 @@ public class FirebaseNotificationAdapter extends AbstractProvider implements IPr
                 data.put(dataArrayList.getKey(), dataArrayList.getValue());
             }
             if (data != null && data.get("fcmToken") != null) {
-                return botService.getAdapterCredentials(nextMsg.getAdapterId()).map(new Function<JsonNode, Mono<XMessage>>() {
+                return credentialCache.getCredentials(nextMsg.getAdapterId(), FirebaseCredentials.class, FirebaseCredentials::from).map(new Function<FirebaseCredentials, Mono<XMessage>>() {
                     @Override
-                    public Mono<XMessage> apply(JsonNode credentials) {
+                    public Mono<XMessage> apply(FirebaseCredentials credentials) {
                         String channelMessageId = UUID.randomUUID().toString();
 
-                        if (credentials != null && credentials.path("serviceKey") != null) {
+                        if (credentials != null) {
                             String click_action = null;
                             if (data.get("fcmClickActionUrl") != null && !data.get("fcmClickActionUrl").isEmpty()) {
                                 click_action = data.get("fcmClickActionUrl");
                             }
-                            String serviceKey = credentials.path("serviceKey").toString();
-                            log.info("FCM serviceKey: " + credentials);
-                            FirebaseMessaging firebaseMessaging = null;
-                            try {
-                                firebaseMessaging = configureFirebaseMessaging(serviceKey, nextMsg.getAdapterId());
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                          
-                            return (new FirebaseNotificationService()).sendNotificationMessage(data.get("fcmToken"), nextMsg.getPayload().getTitle(), nextMsg.getPayload().getText(), click_action, nextMsg.getTo().getUserID(), channelMessageId, notificationKeyEnable,
-                                            data, firebaseMessaging)
+                            String clickAction = click_action;
+                            return firebaseMessagingCache.withMessaging(nextMsg.getAdapterId(), credentials,
+                                            firebaseMessaging -> firebaseNotificationService.sendNotificationMessage(data.get("fcmToken"), nextMsg.getPayload().getTitle(), nextMsg.getPayload().getText(), clickAction, nextMsg.getTo().getUserID(), channelMessageId, notificationKeyEnable,
+                                            data, firebaseMessaging))
                                     .map(new Function<String, XMessage>() {
                                         @Override
                                         public XMessage apply(String messageId) {
@@ -174,6 +170,13 @@ public class FirebaseNotificationAdapter extends AbstractProvider implements IPr
                                             }
                                             return nextMsg;
                                         }
+                                    })
+                                    .onErrorResume(e -> {
+                                        log.error("FirebaseNotificationAdapter:processOutBoundMessageF::Exception: " + e.getMessage());
+                                        nextMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+                                        nextMsg.setRemarks(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+                                        nextMsg.setRespMsgId(null);
+                                        return Mono.just(nextMsg);
                                     });
 
 //                            return (new FirebaseNotificationService()).sendNotificationMessage(credentials.path("serviceKey").asText(), data.get("fcmToken"), nextMsg.getPayload().getTitle(), nextMsg.getPayload().getText(), click_action, nextMsg.getTo().getUserID(), channelMessageId, notificationKeyEnable, data)
@@ -208,7 +211,7 @@ public class FirebaseNotificationAdapter extends AbstractProvider implements IPr
 
     /**
      * New Implementation of Process XMessage & send firebase notification
-     * Bulk Notification Sending
+     * Bulk Notification Sending - grouped by adapter, sent in FCM sized chunks
      *
      * @param xMessageList
      * @return
@@ -216,184 +219,199 @@ public class FirebaseNotificationAdapter extends AbstractProvider implements IPr
      */
     @Override
     public Flux<XMessage> processOutBoundMessageF(Mono<List<XMessage>> xMessageList) throws Exception {
-        List<XMessage> xMessageListCass = new ArrayList<XMessage>();
-        Map<String, List<Message>> adapterIdMap = new HashMap<>();
-        Set<String> uniqueUserSet = new HashSet<>();
-        final long startTime = System.nanoTime();
         return xMessageList
-                .flatMapMany(Flux::fromIterable)
-                .collectList()
-                .map(new Function<List<XMessage>, Mono<List<XMessage>>>() {
-                    public Mono<List<XMessage>> apply(List<XMessage> msgList) {
+                .flatMapMany(new Function<List<XMessage>, Flux<XMessage>>() {
+                    @Override
+                    public Flux<XMessage> apply(List<XMessage> msgList) {
+                        Map<String, List<BulkNotification>> adapterIdMap = new LinkedHashMap<>();
+                        List<XMessage> withoutAdapter = new ArrayList<>();
+                        List<Mono<Void>> correlationWrites = new ArrayList<>();
                         msgList.forEach(nextMsg -> {
-                            SenderReceiverInfo to = nextMsg.getTo();
-                            XMessagePayload payload = nextMsg.getPayload();
-                            Map<String, String> data = new HashMap<>();
-                            if (payload != null) {
-                                for (Data dataArrayList : payload.getData()) {
-                                    data.put(dataArrayList.getKey(), dataArrayList.getValue());
-                                }
+                            Message message = buildBulkMessage(nextMsg);
+                            if (message == null) {
+                                return;
                             }
-                            if (data != null && data.get("fcmToken") != null) {
-                                String channelMessageId = UUID.randomUUID().toString();
-                                String click_action = null;
-                                if (data.get("fcmClickActionUrl") != null && !data.get("fcmClickActionUrl").isEmpty()) {
-                                    click_action = data.get("fcmClickActionUrl");
-                                }
-                                Map<String, String> dataMap = new HashMap<>();
-                                if (data != null) {
-                                    for (String dataKey : data.keySet()) {
-                                        if (!dataKey.equalsIgnoreCase("fcmToken") && !dataKey.equalsIgnoreCase("fcmClickActionUrl")) {
-                                            dataMap.put(dataKey, data.get(dataKey));
-                                        }
-                                    }
-                                }
-                                Notification notification = null;
-                                if (notificationKeyEnable != null && notificationKeyEnable.equalsIgnoreCase("true")) {
-                                    notification = Notification.builder()
-                                            .setTitle(nextMsg.getPayload().getTitle())
-                                            .setBody(nextMsg.getPayload().getText())
-                                            .build();
-                                }
-                                log.info("FirebaseNotificationAdapter:processOutBoundMessageF:: fcmAndroidConfigTTl : " + fcmAndroidConfigTTl);
-                                Message message = Message.builder()
-                                        .setNotification(notification)
-                                        .setToken(data.get("fcmToken"))
-                                        .putData("body", nextMsg.getPayload().getText())
-                                        .putData("title", nextMsg.getPayload().getTitle())
-                                        .putData("externalId", channelMessageId)
-                                        .putData("destAdd", nextMsg.getTo().getUserID())
-                                        .putData("fcmDestAdd", data.get("fcmToken"))
-                                        .putData("click_action", click_action)
-                                        .setFcmOptions(FcmOptions.withAnalyticsLabel(nextMsg.getBotId().toString()))
-                                        .setAndroidConfig(AndroidConfig.builder().setTtl(1000 * fcmAndroidConfigTTl).build())
-                                        .putAllData(dataMap)
-                                        .build();
-//                                uniqueUserSet.add(nextMsg.getTo().getUserID());
-                                String adapterId = nextMsg.getAdapterId();
-
-                                if (adapterId != null) {
-                                    List<Message> tempMsgList = adapterIdMap.computeIfAbsent(adapterId, k -> new ArrayList<>());
-                                    tempMsgList.add(message);
-                                    adapterIdMap.put(adapterId, tempMsgList);
-                                } else {
-                                    log.error("FirebaseNotificationAdapter:processOutBoundMessageF::AdapterId not found : " + nextMsg);
-                                }
-                                nextMsg.setTo(to);
-                                nextMsg.setMessageId(MessageId.builder().channelMessageId(channelMessageId).build());
-                                XMessageDAO xMessageDAO = new XMessageDAO();
-                                xMessageDAO.setApp(nextMsg.getApp());
-                                xMessageDAO.setBotUuid(nextMsg.getBotId());
-                                redisCacheService.setCache(channelMessageId + "_" +nextMsg.getTo().getUserID() , xMessageDAO);
-                                xMessageListCass.add(nextMsg);
+                            correlationWrites.add(writeCorrelation(nextMsg));
+                            String adapterId = nextMsg.getAdapterId();
+                            if (adapterId != null) {
+                                adapterIdMap.computeIfAbsent(adapterId, k -> new ArrayList<>())
+                                        .add(new BulkNotification(nextMsg, message));
                             } else {
-                                log.error("FirebaseNotificationAdapter:processOutBoundMessageF:: Fcm Token not found : " + data);
-                            }
-                        });
-                        // TODO Dynamic this code
-                        String adapterId = adapterIdMap.keySet().stream().collect(Collectors.toList()).get(0);
-                        return botService.getAdapterCredentials(adapterId)
-                                .flatMap(new Function<JsonNode, Mono<List<XMessage>>>() {
-                                    @Override
-                                    public Mono<List<XMessage>> apply(JsonNode credentials) {
-                                        if (credentials != null && credentials.path("serviceKey") != null) {
-                                            log.info("service key data: " + credentials.path("serviceKey"));
-                                            String serviceKey = credentials.path("serviceKey").toString();
-                                            try {
-                                                FirebaseMessaging firebaseMessaging = configureFirebaseMessaging(serviceKey, adapterId);
-                                                List<Message> messageList = adapterIdMap.get(adapterId);
-                                                if (messageList != null && !messageList.isEmpty() && firebaseMessaging != null) {
-                                                    return sendNotificationBatch(firebaseMessaging, messageList)
-                                                            .map(new Function<List<SendResponse>, List<XMessage>>() {
-                                                                @Override
-                                                                public List<XMessage> apply(List<SendResponse> sendResponseList) {
-                                                                    for (int i = 0; i < sendResponseList.size(); i++) {
-                                                                        SendResponse sendResponse = sendResponseList.get(i);
-                                                                        if (sendResponse != null && sendResponse.isSuccessful()) {
-                                                                            log.info("FirebaseNotificationService: Notification triggered success: Bot Id : " + xMessageListCass.get(i).getBotId() + "  Message Id : " + sendResponse.getMessageId() + " Phone No : " + xMessageListCass.get(i).getTo().getUserID());
-                                                                            xMessageListCass.get(i).setTo(xMessageListCass.get(i).getTo());
-                                                                            xMessageListCass.get(i).setRespMsgId(extractMessageId(sendResponse.getMessageId()));
-                                                                            xMessageListCass.get(i).setMessageState(XMessage.MessageState.SENT);
-                                                                        } else {
-                                                                            log.error("FirebaseNotificationService: Notification not sent : Bot Id : " + xMessageListCass.get(i).getBotId() + " Exception : " + sendResponse.getException() + " : For this User : Phone No : " + xMessageListCass.get(i).getTo().getUserID());
-                                                                            xMessageListCass.get(i).setTo(xMessageListCass.get(i).getTo());
-                                                                            xMessageListCass.get(i).setMessageState(XMessage.MessageState.NOT_SENT);
-                                                                            xMessageListCass.get(i).setRemarks(sendResponse.getException().getMessage());
-                                                                            xMessageListCass.get(i).setRespMsgId(null);
-                                                                        }
-                                                                    }
-                                                                    return xMessageListCass;
-                                                                }
-                                                            });
-                                                } else {
-                                                    log.error("FirebaseNotificationAdapter:processOutBoundMessageF:: MessageList empty :" + messageList + " or firebaseMessage object null : " + firebaseMessaging);
-                                                }
-                                            } catch (Exception e) {
-                                                log.error("FirebaseNotificationAdapter:processOutBoundMessageF::Exception: " + e.getMessage());
-                                            }
-                                        } else {
-                                            log.error("Service key not found: " + credentials);
-                                        }
-                                        return Mono.just(new ArrayList<>());
-                                    }
-                                });
-                    }
-                }).flatMapMany(new Function<Mono<List<XMessage>>, Flux<XMessage>>() {
-                    @Override
-                    public Flux<XMessage> apply(Mono<List<XMessage>> listMono) {
-                        return listMono.flatMapMany(new Function<List<XMessage>, Flux<XMessage>>() {
-                            @Override
-                            public Flux<XMessage> apply(List<XMessage> xMessageList) {
-                                return Flux.fromIterable(xMessageList);
+                                log.error("FirebaseNotificationAdapter:processOutBoundMessageF::AdapterId not found : " + nextMsg);
+                                nextMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+                                withoutAdapter.add(nextMsg);
                             }
                         });
+                        log.info("FirebaseNotificationAdapter:processOutBoundMessageF:: messages: " + msgList.size() + ", adapters: " + adapterIdMap.size());
+                        /* Correlation entries must exist before delivery reports of the sent messages come in */
+                        return Mono.when(correlationWrites)
+                                .timeout(getCorrelationTimeout())
+                                .onErrorResume(e -> {
+                                    log.error("FirebaseNotificationAdapter:processOutBoundMessageF::Correlation writes not done in "
+                                            + getCorrelationTimeout().toMillis() + "ms, sending anyway: " + e.getMessage());
+                                    return Mono.empty();
+                                })
+                                .thenMany(Flux.fromIterable(adapterIdMap.entrySet())
+                                .flatMap(group -> sendBulkGroup(group.getKey(), group.getValue()))
+                                .concatWith(Flux.fromIterable(withoutAdapter)));
                     }
                 });
     }
 
     /**
-     * ApiFuture Callback
+     * Build FCM message for a xmessage & set its channel message id, null if fcm token is not found
      *
-     * @param future
-     * @param <T>
+     * @param nextMsg
      * @return
      */
-    private <T> Mono<T> toMono(ApiFuture<T> future) {
-        return Mono.create(sink -> {
-            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
-                public void onSuccess(T result) {
-                    sink.success(result);
-                }
+    private Message buildBulkMessage(XMessage nextMsg) {
+        XMessagePayload payload = nextMsg.getPayload();
+        Map<String, String> data = new HashMap<>();
+        if (payload != null && payload.getData() != null) {
+            for (Data dataArrayList : payload.getData()) {
+                data.put(dataArrayList.getKey(), dataArrayList.getValue());
+            }
+        }
+        if (data.get("fcmToken") == null) {
+            log.error("FirebaseNotificationAdapter:processOutBoundMessageF:: Fcm Token not found : " + data);
+            return null;
+        }
+        String channelMessageId = UUID.randomUUID().toString();
+        String click_action = null;
+        if (data.get("fcmClickActionUrl") != null && !data.get("fcmClickActionUrl").isEmpty()) {
+            click_action = data.get("fcmClickActionUrl");
+        }
+        Map<String, String> dataMap = new HashMap<>();
+        for (String dataKey : data.keySet()) {
+            if (!dataKey.equalsIgnoreCase("fcmToken") && !dataKey.equalsIgnoreCase("fcmClickActionUrl")) {
+                dataMap.put(dataKey, data.get(dataKey));
+            }
+        }
+        Notification notification = null;
+        if (notificationKeyEnable != null && notificationKeyEnable.equalsIgnoreCase("true")) {
+            notification = Notification.builder()
+                    .setTitle(payload.getTitle())
+                    .setBody(payload.getText())
+                    .build();
+        }
+        Message message = Message.builder()
+                .setNotification(notification)
+                .setToken(data.get("fcmToken"))
+                .putData("body", payload.getText())
+                .putData("title", payload.getTitle())
+                .putData("externalId", channelMessageId)
+                .putData("destAdd", nextMsg.getTo().getUserID())
+                .putData("fcmDestAdd", data.get("fcmToken"))
+                .putData("click_action", click_action)
+                .setFcmOptions(FcmOptions.withAnalyticsLabel(nextMsg.getBotId().toString()))
+                .setAndroidConfig(AndroidConfig.builder().setTtl(1000 * fcmAndroidConfigTTl).build())
+                .putAllData(dataMap)
+                .build();
+        nextMsg.setMessageId(MessageId.builder().channelMessageId(channelMessageId).build());
+        return message;
+    }
 
-                public void onFailure(Throwable t) {
-                    sink.error(t);
-                }
-            }, MoreExecutors.directExecutor());
-        });
+    /**
+     * Queue the channel message id & user to app/bot correlation entry of a xmessage for a pipelined write
+     *
+     * @param nextMsg
+     * @return completes when written, never errors
+     */
+    private Mono<Void> writeCorrelation(XMessage nextMsg) {
+        String key = nextMsg.getMessageId().getChannelMessageId() + "_" + nextMsg.getTo().getUserID();
+        XMessageDAO xMessageDAO = new XMessageDAO();
+        xMessageDAO.setApp(nextMsg.getApp());
+        xMessageDAO.setBotUuid(nextMsg.getBotId());
+        return correlationWriter.write(key, xMessageDAO)
+                .onErrorResume(e -> {
+                    log.error("FirebaseNotificationAdapter:writeCorrelation::Exception for key " + key + ": " + e.getMessage());
+                    return Mono.empty();
+                });
     }
 
-    private Mono<List<SendResponse>> sendNotificationBatch(FirebaseMessaging firebaseMessaging, List<Message> messageList) {
-        log.info("All messages processed: messageList count: " + messageList.size());
-        try {
-            return Mono.fromCallable(() -> {
-                        try {
-                            return firebaseMessaging.sendAllAsync(messageList);
-                        } catch (Exception e) {
-                            log.error("FirebaseNotificationAdapter:sendNotificationBatch:: Exception: " + e.getMessage());
-                            throw new RuntimeException(e);
+    /**
+     * Send the notifications of an adapter in chunks, holding its firebase messaging until all chunks are sent.
+     * Notifications are marked not sent if credentials are not found or invalid.
+     *
+     * @param adapterId
+     * @param notifications
+     * @return
+     */
+    private Flux<XMessage> sendBulkGroup(String adapterId, List<BulkNotification> notifications) {
+        return credentialCache.getCredentials(adapterId, FirebaseCredentials.class, FirebaseCredentials::from)
+                .switchIfEmpty(Mono.fromRunnable(() -> log.error("Service key not found for adapter: " + adapterId)))
+                .flatMapMany(credentials -> firebaseMessagingCache.withMessagingMany(adapterId, credentials,
+                        firebaseMessaging -> Flux.fromIterable(Lists.partition(notifications, getBulkChunkSize()))
+                                .flatMap(chunk -> sendBulkChunk(new BulkChunk(adapterId, firebaseMessaging, chunk)), getBulkMaxConcurrency())))
+                .switchIfEmpty(Flux.defer(() -> Flux.fromIterable(markBulkNotSent(notifications, "Firebase credentials not found for adapter: " + adapterId))))
+                .onErrorResume(e -> {
+                    log.error("FirebaseNotificationAdapter:sendBulkGroup::Exception for adapter " + adapterId + ": " + e.getMessage());
+                    return Flux.fromIterable(markBulkNotSent(notifications, e.getMessage()));
+                });
+    }
+
+    /**
+     * Send a chunk of notifications & set each xmessage state from its own send response
+     *
+     * @param chunk
+     * @return
+     */
+    private Flux<XMessage> sendBulkChunk(BulkChunk chunk) {
+        List<Message> messageList = chunk.notifications.stream()
+                .map(notification -> notification.message)
+                .collect(Collectors.toList());
+        return firebaseNotificationService.sendNotificationBatch(chunk.firebaseMessaging, messageList)
+                .map(new Function<List<SendResponse>, List<XMessage>>() {
+                    @Override
+                    public List<XMessage> apply(List<SendResponse> sendResponseList) {
+                        List<XMessage> result = new ArrayList<>(chunk.notifications.size());
+                        for (int i = 0; i < chunk.notifications.size(); i++) {
+                            XMessage xMessage = chunk.notifications.get(i).xMessage;
+                            SendResponse sendResponse = i < sendResponseList.size() ? sendResponseList.get(i) : null;
+                            if (sendResponse != null && sendResponse.isSuccessful()) {
+                                log.info("FirebaseNotificationService: Notification triggered success: Bot Id : " + xMessage.getBotId() + "  Message Id : " + sendResponse.getMessageId() + " Phone No : " + xMessage.getTo().getUserID());
+                                xMessage.setRespMsgId(extractMessageId(sendResponse.getMessageId()));
+                                xMessage.setMessageState(XMessage.MessageState.SENT);
+                            } else {
+                                String remarks = sendResponse != null && sendResponse.getException() != null ? sendResponse.getException().getMessage() : "No send response";
+                                log.error("FirebaseNotificationService: Notification not sent : Bot Id : " + xMessage.getBotId() + " Exception : " + remarks + " : For this User : Phone No : " + xMessage.getTo().getUserID());
+                                xMessage.setMessageState(XMessage.MessageState.NOT_SENT);
+                                xMessage.setRemarks(remarks);
+                                xMessage.setRespMsgId(null);
+                            }
+                            result.add(xMessage);
                         }
-                    })
-                    .flatMap(this::toMono)
-                    .map(batchResponse -> batchResponse.getResponses().stream()
-                            .collect(Collectors.toList()))
-                    .onErrorResume(e -> {
-                        log.error("FirebaseNotificationAdapter:sendNotificationBatch:: Exception: ", e);
-                        return Mono.just(new ArrayList<>());
-                    });
-        } catch (Exception ex) {
-            log.error("An Error occurred: " + ex.getMessage());
-            return Mono.just(new ArrayList<>());
+                        return result;
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.error("FirebaseNotificationAdapter:sendBulkChunk::Exception for adapter " + chunk.adapterId + ": " + e.getMessage());
+                    return Mono.just(markBulkNotSent(chunk.notifications, e.getMessage()));
+                })
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    private List<XMessage> markBulkNotSent(List<BulkNotification> notifications, String remarks) {
+        List<XMessage> result = new ArrayList<>(notifications.size());
+        for (BulkNotification notification : notifications) {
+            notification.xMessage.setMessageState(XMessage.MessageState.NOT_SENT);
+            notification.xMessage.setRemarks(remarks);
+            notification.xMessage.setRespMsgId(null);
+            result.add(notification.xMessage);
         }
+        return result;
+    }
+
+    private Duration getCorrelationTimeout() {
+        return Duration.ofMillis(correlationTimeoutMs > 0 ? correlationTimeoutMs : 10000);
+    }
+
+    private int getBulkChunkSize() {
+        return bulkChunkSize > 0 ? Math.min(bulkChunkSize, FCM_MAX_BATCH_SIZE) : FCM_MAX_BATCH_SIZE;
+    }
+
+    private int getBulkMaxConcurrency() {
+        return bulkMaxConcurrency > 0 ? bulkMaxConcurrency : 1;
     }
 
     private static String extractMessageId(String input) {
@@ -407,20 +425,25 @@ public class FirebaseNotificationAdapter extends AbstractProvider implements IPr
         return null;
     }
 
-    public FirebaseMessaging configureFirebaseMessaging(String serviceKey, String appName) throws Exception {
-        InputStream serviceAccountStream = new ByteArrayInputStream(serviceKey.getBytes(StandardCharsets.UTF_8));
-        GoogleCredentials googleCredentials = GoogleCredentials
-                .fromStream(serviceAccountStream);
-        FirebaseOptions firebaseOptions = FirebaseOptions
-                .builder()
-                .setCredentials(googleCredentials)
-                .build();
-        FirebaseApp existingApp = FirebaseApp.getApps().stream()
-                .filter(app -> app.getName().equals(appName))
-                .findFirst()
-                .orElseGet(() -> {
-                    return FirebaseApp.initializeApp(firebaseOptions, appName);
-                });
-        return FirebaseMessaging.getInstance(existingApp);
+    private static class BulkNotification {
+        private final XMessage xMessage;
+        private final Message message;
+
+        private BulkNotification(XMessage xMessage, Message message) {
+            this.xMessage = xMessage;
+            this.message = message;
+        }
+    }
+
+    private static class BulkChunk {
+        private final String adapterId;
+        private final FirebaseMessaging firebaseMessaging;
+        private final List<BulkNotification> notifications;
+
+        private BulkChunk(String adapterId, FirebaseMessaging firebaseMessaging, List<BulkNotification> notifications) {
+            this.adapterId = adapterId;
+            this.firebaseMessaging = firebaseMessaging;
+            this.notifications = notifications;
+        }
     }
 }
@@ -8,10 +8,12 @@ import com.google.firebase.messaging.Message;
 import com.google.firebase.messaging.Notification;
 import com.google.firebase.messaging.SendResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -25,6 +27,13 @@ public class FirebaseNotificationService {
 
     public static final String url = "https://fcm.googleapis.com/fcm/send";
 
+    private final Scheduler fcmScheduler;
+
+    @Autowired
+    public FirebaseNotificationService(@Qualifier("fcmScheduler") Scheduler fcmScheduler) {
+        this.fcmScheduler = fcmScheduler;
+    }
+
     /**
      * Send FCM Notification to token with title & body
      *
@@ -35,41 +44,54 @@ public class FirebaseNotificationService {
      */
     public Mono<String> sendNotificationMessage(String token, String title, String body, String click_action, String phone, String channelMessageId, String notificationKeyEnable, Map<String, String> data, FirebaseMessaging firebaseMessaging) {
         return Mono.fromCallable(() -> {
-            try {
-                Map<String, String> dataMap = new HashMap<>();
-                if (data != null) {
-                    for (String dataKey : data.keySet()) {
-                        if (!dataKey.equalsIgnoreCase("fcmToken") && !dataKey.equalsIgnoreCase("fcmClickActionUrl")) {
-                            dataMap.put(dataKey, data.get(dataKey));
+                    Map<String, String> dataMap = new HashMap<>();
+                    if (data != null) {
+                        for (String dataKey : data.keySet()) {
+                            if (!dataKey.equalsIgnoreCase("fcmToken") && !dataKey.equalsIgnoreCase("fcmClickActionUrl")) {
+                                dataMap.put(dataKey, data.get(dataKey));
+                            }
                         }
                     }
-                }
-                Notification notification = null;
-                if (notificationKeyEnable != null && notificationKeyEnable.equalsIgnoreCase("true")) {
-                    notification = Notification.builder()
-                            .setTitle(title)
-                            .setBody(body)
+                    Notification notification = null;
+                    if (notificationKeyEnable != null && notificationKeyEnable.equalsIgnoreCase("true")) {
+                        notification = Notification.builder()
+                                .setTitle(title)
+                                .setBody(body)
+                                .build();
+                    }
+                    Message message = Message.builder()
+                            .setNotification(notification)
+                            .setToken(data.get("fcmToken"))
+                            .putData("body", body)
+                            .putData("title", title)
+                            .putData("externalId", channelMessageId)
+                            .putData("destAdd", phone)
+                            .putData("fcmDestAdd", token)
+                            .putData("click_action", click_action)
+                            .putAllData(dataMap)
                             .build();
-                }
-                Message message = Message.builder()
-                        .setNotification(notification)
-                        .setToken(data.get("fcmToken"))
-                        .putData("body", body)
-                        .putData("title", title)
-                        .putData("externalId", channelMessageId)
-                        .putData("destAdd", phone)
-                        .putData("fcmDestAdd", token)
-                        .putData("click_action", click_action)
-                        .putAllData(dataMap)
-                        .build();
-                String messageId = firebaseMessaging.send(message);
-                log.info("FCM Returned MessageID  : " + messageId);
-                return messageId;
-            } catch (Exception ex) {
-                log.error("FirebaseNotificationService:sendNotificationMessage::Exception: " + ex.getMessage());
-                return null;
-            }
-        });
+                    return firebaseMessaging.sendAsync(message);
+                })
+                .subscribeOn(fcmScheduler)
+                .flatMap(FirebaseFutures::toMono)
+                .doOnNext(messageId -> log.info("FCM Returned MessageID  : " + messageId))
+                .doOnError(ex -> log.error("FirebaseNotificationService:sendNotificationMessage::Exception: " + ex.getMessage()));
+    }
+
+    /**
+     * Send a batch of FCM messages, responses are in the order of messages
+     *
+     * @param firebaseMessaging
+     * @param messageList
+     * @return
+     */
+    public Mono<List<SendResponse>> sendNotificationBatch(FirebaseMessaging firebaseMessaging, List<Message> messageList) {
+        log.info("All messages processed: messageList count: " + messageList.size());
+        return Mono.fromCallable(() -> firebaseMessaging.sendAllAsync(messageList))
+                .subscribeOn(fcmScheduler)
+                .flatMap(FirebaseFutures::toMono)
+                .map(batchResponse -> batchResponse.getResponses())
+                .doOnError(ex -> log.error("FirebaseNotificationService:sendNotificationBatch::Exception: " + ex.getMessage()));
     }
 
     /**
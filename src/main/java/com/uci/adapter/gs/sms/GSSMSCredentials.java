@@ -0,0 +1,31 @@
+package com.uci.adapter.gs.sms;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.uci.adapter.cache.AdapterCredentialCache;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class GSSMSCredentials {
+    private String username;
+    private String password;
+
+    /**
+     * Parse gupshup sms credentials, null if any field is missing
+     * @param credentials
+     * @return
+     */
+    public static GSSMSCredentials from(JsonNode credentials) {
+        if (credentials == null || credentials.isEmpty()) {
+            return null;
+        }
+        GSSMSCredentials smsCredentials = new GSSMSCredentials();
+        smsCredentials.setUsername(AdapterCredentialCache.getText(credentials, "username"));
+        smsCredentials.setPassword(AdapterCredentialCache.getText(credentials, "password"));
+        if (smsCredentials.getUsername() == null || smsCredentials.getPassword() == null) {
+            return null;
+        }
+        return smsCredentials;
+    }
+}
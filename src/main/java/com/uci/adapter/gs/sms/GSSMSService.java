@@ -3,31 +3,53 @@ package com.uci.adapter.gs.sms;
 import com.uci.adapter.gs.sms.outbound.GupshupSMSResponse;
 import com.uci.adapter.gs.whatsapp.GSWhatsappOutBoundResponse;
 import com.uci.adapter.gs.whatsapp.GSWhatsappService;
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
 import java.net.URI;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+@Service
 public class GSSMSService {
     private final static String GUPSHUP_OUTBOUND = "https://media.smsgupshup.com/GatewayAPI/rest";
 
     private final WebClient webClient;
 
-    private static GSSMSService gupshupService = null;
+    private static volatile GSSMSService gupshupService = null;
 
     public GSSMSService() {
         webClient = WebClient.builder()
                 .build();
     }
 
+    @Autowired
+    public GSSMSService(VendorHttpClientFactory httpClientFactory) {
+        webClient = httpClientFactory.getWebClient(HttpVendor.gupshup);
+    }
+
+    /**
+     * Share the pooled spring managed instance with getInstance() callers
+     */
+    @PostConstruct
+    public void registerInstance() {
+        gupshupService = this;
+    }
+
     public static GSSMSService getInstance() {
         if (gupshupService == null) {
-            return new GSSMSService();
-        } else {
-            return gupshupService;
+            synchronized (GSSMSService.class) {
+                if (gupshupService == null) {
+                    gupshupService = new GSSMSService();
+                }
+            }
         }
+        return gupshupService;
     }
 
     public Mono<GupshupSMSResponse> sendOutboundMessage(URI url) {
@@ -1,6 +1,6 @@
 package com.uci.adapter.gs.sms;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.uci.adapter.cache.AdapterCredentialCache;
 import com.uci.adapter.gs.sms.outbound.GupshupSMSResponse;
 import com.uci.adapter.provider.factory.AbstractProvider;
 import com.uci.adapter.provider.factory.IProvider;
@@ -34,6 +34,9 @@ public class GupShupSMSAdapter  extends AbstractProvider implements IProvider {
     @Autowired
     private BotService botService;
 
+    @Autowired
+    private AdapterCredentialCache credentialCache;
+
     private final static String GUPSHUP_SMS_OUTBOUND = "http://enterprise.smsgupshup.com/GatewayAPI/rest";
 
     /**
@@ -76,11 +79,11 @@ public class GupShupSMSAdapter  extends AbstractProvider implements IProvider {
     public Mono<XMessage> processOutBoundMessageF(XMessage xMsg) throws Exception {
         String adapterIdFromXML = xMsg.getAdapterId();
 
-        return botService.getAdapterCredentials(adapterIdFromXML)
-                .map(new Function<JsonNode, Mono<XMessage>>() {
+        return credentialCache.getCredentials(adapterIdFromXML, GSSMSCredentials.class, GSSMSCredentials::from)
+                .map(new Function<GSSMSCredentials, Mono<XMessage>>() {
                     @Override
-                        public Mono<XMessage> apply(JsonNode credentials) {
-                            if (credentials != null && !credentials.isEmpty()) {
+                        public Mono<XMessage> apply(GSSMSCredentials credentials) {
+                            if (credentials != null) {
                                 UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(GUPSHUP_SMS_OUTBOUND);
 
                                 builder.queryParam("method", "SendMessage");
@@ -88,9 +91,9 @@ public class GupShupSMSAdapter  extends AbstractProvider implements IProvider {
                                 builder.queryParam("msg",  xMsg.getPayload().getText());
                                 builder.queryParam("msg_type", "Text");
                                 builder.queryParam("messageId", "123456781");
-                                builder.queryParam("userid", credentials.findValue("username").asText());
+                                builder.queryParam("userid", credentials.getUsername());
                                 builder.queryParam("auth_scheme", "plain");
-                                builder.queryParam("password", credentials.findValue("password").asText());
+                                builder.queryParam("password", credentials.getPassword());
                                 builder.queryParam("v", "1.1");
                                 builder.queryParam("format", "json");
                                 builder.queryParam("data_encoding", "text");
@@ -140,7 +143,11 @@ public class GupShupSMSAdapter  extends AbstractProvider implements IProvider {
                     public Mono<? extends XMessage> apply(Mono<XMessage> o) {
                         return o;
                     }
-                });
+                }).switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.error("Credentials not found");
+                    xMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+                    return xMsg;
+                }));
 
     }
 }
@@ -4,29 +4,52 @@ import java.net.URI;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+
+@Service
 public class GSWhatsappService {
 
     private final static String GUPSHUP_OUTBOUND = "https://media.smsgupshup.com/GatewayAPI/rest";
 
     private final WebClient webClient;
 
-    private static GSWhatsappService gupshuupService = null;
+    private static volatile GSWhatsappService gupshuupService = null;
 
     public GSWhatsappService() {
         webClient = WebClient.builder()
                 .build();
     }
 
+    @Autowired
+    public GSWhatsappService(VendorHttpClientFactory httpClientFactory) {
+        webClient = httpClientFactory.getWebClient(HttpVendor.gupshup);
+    }
+
+    /**
+     * Share the pooled spring managed instance with getInstance() callers
+     */
+    @PostConstruct
+    public void registerInstance() {
+        gupshuupService = this;
+    }
+
     public static GSWhatsappService getInstance() {
         if (gupshuupService == null) {
-            return new GSWhatsappService();
-        } else {
-            return gupshuupService;
+            synchronized (GSWhatsappService.class) {
+                if (gupshuupService == null) {
+                    gupshuupService = new GSWhatsappService();
+                }
+            }
         }
+        return gupshuupService;
     }
 
     public Mono<GSWhatsappOutBoundResponse> sendOutboundMessage(URI url) {
@@ -0,0 +1,47 @@
+package com.uci.adapter.gs.whatsapp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.uci.adapter.cache.AdapterCredentialCache;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class GWCredentials {
+    String passwordHSM;
+    String usernameHSM;
+    String password2Way;
+    String username2Way;
+
+    /**
+     * Parse gupshup whatsapp credentials, fields not present are left null.
+     * Adapters may have only two way credentials, check the pair needed with hasHSM/has2Way.
+     * @param credentials
+     * @return null if there are no credentials
+     */
+    public static GWCredentials from(JsonNode credentials) {
+        if (credentials == null || credentials.isEmpty()) {
+            return null;
+        }
+        GWCredentials gwCredentials = new GWCredentials();
+        gwCredentials.setUsernameHSM(AdapterCredentialCache.getText(credentials, "usernameHSM"));
+        gwCredentials.setPasswordHSM(AdapterCredentialCache.getText(credentials, "passwordHSM"));
+        gwCredentials.setUsername2Way(AdapterCredentialCache.getText(credentials, "username2Way"));
+        gwCredentials.setPassword2Way(AdapterCredentialCache.getText(credentials, "password2Way"));
+        return gwCredentials;
+    }
+
+    /**
+     * @return true if the HSM username & password are present
+     */
+    public boolean hasHSM() {
+        return usernameHSM != null && passwordHSM != null;
+    }
+
+    /**
+     * @return true if the two way username & password are present
+     */
+    public boolean has2Way() {
+        return username2Way != null && password2Way != null;
+    }
+}
@@ -4,7 +4,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.uci.adapter.cache.AdapterCredentialCache;
 import com.uci.adapter.cdn.FileCdnProvider;
 import com.uci.adapter.gs.whatsapp.outbound.MessageType;
 import com.uci.adapter.gs.whatsapp.outbound.MethodType;
@@ -17,6 +20,8 @@ import com.uci.adapter.provider.factory.AbstractProvider;
 import com.uci.adapter.provider.factory.IProvider;
 import com.uci.adapter.cdn.service.SunbirdCloudMediaService;
 import com.uci.adapter.utils.CommonUtils;
+import com.uci.adapter.utils.JsonCodecs;
+import com.uci.adapter.media.MediaUploader;
 import com.uci.adapter.utils.MediaSizeLimit;
 import com.uci.dao.repository.XMessageRepository;
 import com.uci.utils.BotService;
@@ -45,15 +50,6 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-@Getter
-@Setter
-class GWCredentials {
-    String passwordHSM;
-    String usernameHSM;
-    String password2Way;
-    String username2Way;
-}
-
 @Slf4j
 @Getter
 @Setter
@@ -63,6 +59,14 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     private String gsApiKey = "test";
 
     private final static String GUPSHUP_OUTBOUND = "https://media.smsgupshup.com/GatewayAPI/rest";
+
+    private final static ObjectReader REPORTS_READER = JsonCodecs.readerFor(new TypeReference<List<GSWhatsappReport>>() {
+    });
+
+    private final static ObjectWriter REPORT_WRITER = JsonCodecs.writerFor(GSWhatsappReport.class);
+    private final static ObjectReader CONTENT_READER = JsonCodecs.readerFor(JsonNode.class);
+    private final static ObjectWriter CONTENT_WRITER = JsonCodecs.writerFor(ObjectNode.class);
+
     @Autowired
     @Qualifier("rest")
     private RestTemplate restTemplate;
@@ -81,6 +85,12 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
 	@Autowired
 	private FileCdnProvider fileCdnProvider;
 
+	private AdapterCredentialCache credentialCache;
+
+	private GupshupOptInStore optInStore;
+
+	private MediaUploader mediaUploader;
+
     /**
      * Convert Inbound Gupshup Message To XMessage
      */
@@ -106,10 +116,9 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
 
         if (message.getResponse() != null) {
             String reportResponse = message.getResponse();
-            List<GSWhatsappReport> participantJsonList = new ObjectMapper().readValue(reportResponse, new TypeReference<List<GSWhatsappReport>>() {
-            });
+            List<GSWhatsappReport> participantJsonList = REPORTS_READER.readValue(reportResponse);
             for (GSWhatsappReport reportMsg : participantJsonList) {
-                log.info("reportMsg {}", new ObjectMapper().writeValueAsString(reportMsg));
+                log.info("reportMsg {}", REPORT_WRITER.writeValueAsString(reportMsg));
                 String eventType = reportMsg.getEventType();
                 xmsgPayload.setText("");
                 messageIdentifier.setChannelMessageId(reportMsg.getExternalId());
@@ -161,10 +170,16 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
             
             messageState[0] = XMessage.MessageState.REPLIED;
             xmsgPayload.setText("");
-            xmsgPayload.setMedia(getInboundMediaMessage(message));
             messageIdentifier.setChannelMessageId(message.getMessageId());
-            
-            return Mono.just(processedXMessage(message, xmsgPayload, to, from, messageState[0], messageIdentifier, messageType));
+
+            /* Media is downloaded & uploaded on the gupshup media scheduler, not the converting thread */
+            Map<String, Object> mediaInfo = getMediaInfo(message);
+            return mediaUploader.uploadFromUrlAsync("gupshup", mediaInfo.get("mediaUrl").toString(),
+                            mediaInfo.get("mime_type").toString(), message.getMessageId(), fileCdnProvider)
+                    .map(mediaData -> {
+                        xmsgPayload.setMedia(getInboundMediaMessage(mediaInfo, mediaData));
+                        return processedXMessage(message, xmsgPayload, to, from, messageState[0], messageIdentifier, messageType);
+                    });
         } else if (message.getType().equals("button")) {
             from.setUserID(message.getMobile().substring(2));
             return Mono.just(processedXMessage(message, xmsgPayload, to, from, messageState[0],messageIdentifier, messageType));
@@ -188,12 +203,11 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     
     /**
      * Get Inbound Media name/url
-     * @param message
+     * @param mediaInfo
+     * @param mediaData upload result
      * @return
      */
-    private MessageMedia getInboundMediaMessage(GSWhatsAppMessage message) {
-    	Map<String, Object> mediaInfo = getMediaInfo(message);
-    	Map<String, Object> mediaData = uploadInboundMediaFile(message.getMessageId(), mediaInfo.get("mediaUrl").toString(), mediaInfo.get("mime_type").toString());
+    private MessageMedia getInboundMediaMessage(Map<String, Object> mediaInfo, Map<String, Object> mediaData) {
     	MessageMedia media = new MessageMedia();
     	media.setText(mediaData.get("name").toString());
     	media.setUrl(mediaData.get("url").toString());
@@ -232,9 +246,8 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     	}
     	
     	if(mediaContent != null && !mediaContent.isEmpty()) {
-    		ObjectMapper mapper = new ObjectMapper();
         	try {
-        		JsonNode node = mapper.readTree(mediaContent);
+        		JsonNode node = CONTENT_READER.readTree(mediaContent);
     			log.info("media content node: "+node);
     	    	
     			String url = node.path("url") != null ? node.path("url").asText() : "";
@@ -256,52 +269,6 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     	return result;
     }
     
-    /**
-     * Upload media & get its url/name
-     * @param messageId
-     * @param mediaUrl
-     * @param mime_type
-     * @return
-     */
-    private Map<String, Object> uploadInboundMediaFile(String messageId, String mediaUrl, String mime_type) {
-		Map<String, Object> result = new HashMap();
-
-		Double maxSizeForMedia = mediaSizeLimit.getMaxSizeForMedia(mime_type);
-    	String name = "";
-    	String url = "";
-    	if(!mediaUrl.isEmpty()) {
-			byte[] inputBytes = FileUtil.getInputBytesFromUrl(mediaUrl);
-			if(inputBytes != null) {
-				String sizeError = FileUtil.validateFileSizeByInputBytes(inputBytes, maxSizeForMedia);
-				if(sizeError.isEmpty()) {
-					/* Unique File Name */
-					name = FileUtil.getUploadedFileName(mime_type, messageId);
-					String filePath = FileUtil.fileToLocalFromBytes(inputBytes, mime_type, name);
-					if(!filePath.isEmpty()) {
-						url = fileCdnProvider.uploadFileFromPath(filePath, name);
-					} else {
-						result.put("size", 0d);
-						result.put("error", MessageMediaError.EMPTY_RESPONSE);
-					}
-				} else {
-					result.put("size", (double) inputBytes.length);
-					result.put("error", MessageMediaError.PAYLOAD_TO_LARGE);
-				}
-			} else {
-				result.put("size", 0d);
-				result.put("error", MessageMediaError.EMPTY_RESPONSE);
-			}
-    	} else {
-			result.put("size", 0d);
-			result.put("error", MessageMediaError.EMPTY_RESPONSE);
-		}
-    	
-    	result.put("name", name);
-    	result.put("url", url);
-    	
-    	return result;
-    }
-    
     /**
      * Get XMessage Payload Location params for inbound Location 
      * @param message
@@ -315,9 +282,8 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     	String url = "";
     	String locationContent = message.getLocation();
     	if(locationContent != null && !locationContent.isEmpty()) {
-    		ObjectMapper mapper = new ObjectMapper();
         	try {
-        		JsonNode node = mapper.readTree(locationContent);
+        		JsonNode node = CONTENT_READER.readTree(locationContent);
     			log.info("locationcontent node: "+node);
     	    	
     			longitude = node.path("longitude") != null ? Double.parseDouble(node.path("longitude").asText()) : null;
@@ -350,9 +316,8 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     	String text  = "";
     	String interactiveContent = message.getInteractive();
     	if(interactiveContent != null && !interactiveContent.isEmpty()) {
-    		ObjectMapper mapper = new ObjectMapper();
         	try {
-        		JsonNode node = mapper.readTree(interactiveContent);
+        		JsonNode node = CONTENT_READER.readTree(interactiveContent);
     			log.info("interactive content node: "+node);
     	    	
     			String type = node.path("type") != null ? node.path("type").asText() : "";
@@ -419,37 +384,50 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
 		String adapterIdFromXML = xMsg.getAdapterId();
         String adapterId = "44a9df72-3d7a-4ece-94c5-98cf26307324";
 
-		 return botservice.getAdapterCredentials(adapterIdFromXML).map(new Function<JsonNode, Mono<XMessage>>() {
+		 return credentialCache.getCredentials(adapterIdFromXML, GWCredentials.class, GWCredentials::from).map(new Function<GWCredentials, Mono<XMessage>>() {
 				@Override
-				public Mono<XMessage> apply(JsonNode credentials) {
-					if(credentials != null && !credentials.isEmpty()) {							
+				public Mono<XMessage> apply(GWCredentials credentials) {
+					if(credentials != null) {
 					String text = xMsg.getPayload().getText();
 					UriComponentsBuilder builder = getURIBuilder();
+					Mono<Void> optIn = Mono.empty();
 					if (xMsg.getMessageState().equals(XMessage.MessageState.OPTED_IN)) {
+						if (!credentials.has2Way()) {
+							return credentialsNotFound(xMsg, "two way");
+						}
 						text += renderMessageChoices(xMsg.getPayload().getButtonChoices());
 
-						builder = setBuilderCredentialsAndMethod(builder, MethodType.OPTIN.toString(), credentials.findValue("username2Way").asText(), credentials.findValue("password2Way").asText());
+						builder = setBuilderCredentialsAndMethod(builder, MethodType.OPTIN.toString(), credentials.getUsername2Way(), credentials.getPassword2Way());
 						builder.queryParam("channel", xMsg.getChannelURI().toLowerCase()).
 							queryParam("phone_number", "91" + xMsg.getTo().getUserID());
 					} else if (xMsg.getMessageType() != null && xMsg.getMessageType().equals(XMessage.MessageType.HSM)) {
-						optInUser(xMsg, credentials.findValue("usernameHSM").asText(), credentials.findValue("passwordHSM").asText(), credentials.findValue("username2Way").asText(), credentials.findValue("password2Way").asText());
+						if (!credentials.hasHSM()) {
+							return credentialsNotFound(xMsg, "HSM");
+						}
+						optIn = optInUser(xMsg, credentials.getUsernameHSM(), credentials.getPasswordHSM());
 
 						text += renderMessageChoices(xMsg.getPayload().getButtonChoices());
-						builder = setBuilderCredentialsAndMethod(builder, MethodType.SIMPLEMESSAGE.toString(), credentials.findValue("usernameHSM").asText(), credentials.findValue("passwordHSM").asText());
+						builder = setBuilderCredentialsAndMethod(builder, MethodType.SIMPLEMESSAGE.toString(), credentials.getUsernameHSM(), credentials.getPasswordHSM());
 						builder.queryParam("send_to", "91" + xMsg.getTo().getUserID()).
 							queryParam("msg", text).
 							queryParam("isHSM", true).
 							queryParam("msg_type", MessageType.HSM.toString());
 					} else if (xMsg.getMessageType() != null && xMsg.getMessageType().equals(XMessage.MessageType.HSM_WITH_BUTTON)) {
-						optInUser(xMsg, credentials.findValue("usernameHSM").asText(), credentials.findValue("passwordHSM").asText(), credentials.findValue("username2Way").asText(), credentials.findValue("password2Way").asText());
+						if (!credentials.hasHSM()) {
+							return credentialsNotFound(xMsg, "HSM");
+						}
+						optIn = optInUser(xMsg, credentials.getUsernameHSM(), credentials.getPasswordHSM());
 
 						text += renderMessageChoices(xMsg.getPayload().getButtonChoices());
-						builder = setBuilderCredentialsAndMethod(builder, "SendMessage", credentials.findValue("usernameHSM").asText(), credentials.findValue("passwordHSM").asText());
+						builder = setBuilderCredentialsAndMethod(builder, "SendMessage", credentials.getUsernameHSM(), credentials.getPasswordHSM());
 						builder.queryParam("send_to", "91" + xMsg.getTo().getUserID()).
 							queryParam("msg", text).
 							queryParam("isTemplate", "true").
 							queryParam("msg_type", MessageType.HSM.toString());
 					} else if (xMsg.getMessageState().equals(XMessage.MessageState.REPLIED)) {
+						if (!credentials.has2Way()) {
+							return credentialsNotFound(xMsg, "two way");
+						}
 						Boolean plainText = true;
 
 						MessageType msgType = MessageType.TEXT;
@@ -457,7 +435,7 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
 						StylingTag stylingTag = xMsg.getPayload().getStylingTag() != null
 								? xMsg.getPayload().getStylingTag() : null;
 
-						builder = setBuilderCredentialsAndMethod(builder, MethodType.SIMPLEMESSAGE.toString(), credentials.findValue("username2Way").asText(), credentials.findValue("password2Way").asText());
+						builder = setBuilderCredentialsAndMethod(builder, MethodType.SIMPLEMESSAGE.toString(), credentials.getUsername2Way(), credentials.getPassword2Way());
 						builder.queryParam("send_to", "91" + xMsg.getTo().getUserID()).
 							queryParam("msg_type", MessageType.TEXT.toString());
 
@@ -507,7 +485,7 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
 					URI expanded = URI.create(builder.toUriString());
 					log.info(expanded.toString());
 
-					return GSWhatsappService.getInstance().sendOutboundMessage(expanded).map(new Function<GSWhatsappOutBoundResponse, XMessage>() {
+					return optIn.then(GSWhatsappService.getInstance().sendOutboundMessage(expanded)).map(new Function<GSWhatsappOutBoundResponse, XMessage>() {
 						@Override
 						public XMessage apply(GSWhatsappOutBoundResponse response) {
 							if(response != null && response.getResponse().getStatus().equals("success")){
@@ -539,9 +517,25 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
 				 public Mono<? extends XMessage> apply(Mono<XMessage> o) {
 					 return o;
 				 }
-			 });
+			 }).switchIfEmpty(Mono.fromSupplier(() -> {
+				 log.error("Credentials not found");
+				 xMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+				 return xMsg;
+			 }));
     }
 
+	/**
+	 * Mark a message not sent as the credentials its send needs are missing
+	 * @param xMsg
+	 * @param type credentials type, for the log
+	 * @return
+	 */
+	private Mono<XMessage> credentialsNotFound(XMessage xMsg, String type) {
+		log.error("Gupshup Whatsapp " + type + " credentials not found for adapter: " + xMsg.getAdapterId());
+		xMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+		return Mono.just(xMsg);
+	}
+
 	/**
 	 * Validate if button choice option are valid for the list/button styling
 	 * @param payload
@@ -596,15 +590,14 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     			})
     			.build();
 		
-		ObjectMapper mapper = new ObjectMapper();
+		ObjectMapper mapper = JsonCodecs.mapper();
 		try {
-			 String content = mapper.writeValueAsString(action);
-			 JsonNode node = mapper.readTree(content);
+			 JsonNode node = mapper.valueToTree(action);
 			 ObjectNode data = mapper.createObjectNode();
 			 
 			 data.put("button", node.path("button"));
 			 data.put("sections", node.path("sections"));
-			 return mapper.writeValueAsString(data);
+			 return CONTENT_WRITER.writeValueAsString(data);
 		} catch (JsonProcessingException e) {
 			// TODO Auto-generated catch block
 			log.error("Exception in getInteractiveListContent: "+e.getMessage());
@@ -635,14 +628,13 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
     	    			.buttons(buttons)
     	    			.build();
 	    
-	    ObjectMapper mapper = new ObjectMapper();
+	    ObjectMapper mapper = JsonCodecs.mapper();
 		try {
-			 String content = mapper.writeValueAsString(action);
-			 JsonNode node = mapper.readTree(content);
+			 JsonNode node = mapper.valueToTree(action);
 			 ObjectNode data = mapper.createObjectNode();
 			 
 			 data.put("buttons", node.path("buttons"));
-			 return mapper.writeValueAsString(data);
+			 return CONTENT_WRITER.writeValueAsString(data);
 		} catch (JsonProcessingException e) {
 			// TODO Auto-generated catch block
 			log.error("Exception in getInteractiveQRBtnContent: "+e.getMessage());
@@ -709,7 +701,14 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
         return "";
     }
 
-    private void optInUser(XMessage xMsg, String usernameHSM, String passwordHSM, String username2Way, String password2Way) {
+    /**
+     * Opt in user for HSM messages, skipped if the number is already opted in for the adapter
+     * @param xMsg
+     * @param usernameHSM
+     * @param passwordHSM
+     * @return completes when done, never errors
+     */
+    private Mono<Void> optInUser(XMessage xMsg, String usernameHSM, String passwordHSM) {
         UriComponentsBuilder optInBuilder = UriComponentsBuilder.fromHttpUrl(GUPSHUP_OUTBOUND).
                 queryParam("v", "1.1").
                 queryParam("format", "json").
@@ -722,10 +721,11 @@ public class GupShupWhatsappAdapter extends AbstractProvider implements IProvide
                 queryParam("messageId", "123456789");
 
         URI expanded = URI.create(optInBuilder.toUriString());
-        System.out.println(expanded.toString());
-        RestTemplate restTemplate = new RestTemplate();
-        String result = restTemplate.getForObject(expanded, String.class);
-        System.out.println(result);
+        return optInStore.ensureOptedIn(xMsg.getAdapterId(), xMsg.getTo().getUserID(),
+                () -> GSWhatsappService.getInstance().sendOutboundMessage(expanded)
+                        .map(response -> response.getResponse() != null
+                                && "success".equals(response.getResponse().getStatus()))
+                        .doOnNext(success -> log.info("Gupshup opt in for " + xMsg.getTo().getUserID() + ", success: " + success)));
     }
 
 	/**
@@ -0,0 +1,134 @@
+package com.uci.adapter.gs.whatsapp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in state of gupshup numbers by adapter, backed by redis with a bounded in memory cache of recent numbers.
+ *
+ * A number is marked once its OPT_IN call succeeds; later HSM sends skip the call.
+ * Concurrent sends to the same number share one OPT_IN call.
+ *
+ * Redis is the source of truth, numbers not in memory cost one redis lookup. The memory cache only holds
+ * recently sent numbers, keyed by the numeric phone number per adapter.
+ */
+@Slf4j
+@Component
+public class GupshupOptInStore {
+
+    private static final String REDIS_KEY_PREFIX = "gupshup-optin:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final Duration ttl;
+
+    private final long maxSize;
+
+    /* Opted in numbers by adapter id */
+    private final Map<String, Cache<Long, Boolean>> optedIn = new ConcurrentHashMap<>();
+
+    /* Lookups & OPT_IN calls in progress, by adapter id & number */
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GupshupOptInStore(RedisTemplate<String, Object> redisTemplate,
+                             @Value("${gupshup.optin.cache.maxSize:#{100000}}") long maxSize,
+                             @Value("${gupshup.optin.ttlDays:#{30}}") long ttlDays) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = Duration.ofDays(ttlDays);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Make sure a number is opted in, calling OPT_IN only if it is not known to be opted in yet
+     * @param adapterId
+     * @param phoneNumber
+     * @param optInCall OPT_IN api call, emits true on success
+     * @return completes when done, never errors
+     */
+    public Mono<Void> ensureOptedIn(String adapterId, String phoneNumber, Supplier<Mono<Boolean>> optInCall) {
+        String key = adapterId + ":" + phoneNumber;
+        long number = toNumber(phoneNumber);
+        Cache<Long, Boolean> numbers = optedIn.computeIfAbsent(adapterId, id -> Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build());
+        if (number >= 0 && numbers.getIfPresent(number) != null) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+                    CompletableFuture<Boolean> created = new CompletableFuture<>();
+                    CompletableFuture<Boolean> existing = inFlight.putIfAbsent(key, created);
+                    if (existing != null) {
+                        return Mono.fromFuture(existing);
+                    }
+                    isOptedInRemote(key)
+                            .flatMap(remote -> remote ? Mono.just(true) : optIn(key, optInCall))
+                            .defaultIfEmpty(false)
+                            .subscribe(result -> {
+                                if (result && number >= 0) {
+                                    numbers.put(number, Boolean.TRUE);
+                                }
+                                inFlight.remove(key, created);
+                                created.complete(result);
+                            }, e -> {
+                                inFlight.remove(key, created);
+                                created.completeExceptionally(e);
+                            });
+                    return Mono.fromFuture(created);
+                })
+                .onErrorResume(e -> {
+                    log.error("GupshupOptInStore:ensureOptedIn::Exception for " + key + ": " + e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * @return digits of a phone number as a number, -1 if it has none or too many
+     */
+    private static long toNumber(String phoneNumber) {
+        if (phoneNumber == null) {
+            return -1;
+        }
+        String digits = phoneNumber.replaceAll("[^0-9]", "");
+        return !digits.isEmpty() && digits.length() <= 18 ? Long.parseLong(digits) : -1;
+    }
+
+    /**
+     * @return true when opted in, empty otherwise so that the number is not cached
+     */
+    private Mono<Boolean> optIn(String key, Supplier<Mono<Boolean>> optInCall) {
+        return optInCall.get()
+                .filter(Boolean::booleanValue)
+                .flatMap(success -> Mono.fromRunnable(() -> redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + key, Boolean.TRUE, ttl))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            log.error("GupshupOptInStore:optIn::Redis exception for " + key + ": " + e.getMessage());
+                            return Mono.empty();
+                        })
+                        .thenReturn(success));
+    }
+
+    private Mono<Boolean> isOptedInRemote(String key) {
+        return Mono.fromCallable(() -> Boolean.TRUE.equals(redisTemplate.hasKey(REDIS_KEY_PREFIX + key)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("GupshupOptInStore:isOptedInRemote::Redis exception for " + key + ": " + e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+}
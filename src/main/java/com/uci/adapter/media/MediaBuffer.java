@@ -0,0 +1,224 @@
+package com.uci.adapter.media;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Media read fully from a stream: kept in a pooled heap array when it fits the memory threshold,
+ * spilled to a memory mapped temp file otherwise. Closing it returns the array to the pool & deletes the temp file.
+ */
+@Slf4j
+public class MediaBuffer implements Closeable {
+
+    private final Pool pool;
+
+    private byte[] memory;
+
+    private final int size;
+
+    private final String fileSuffix;
+
+    private Path file;
+
+    private MappedByteBuffer mapped;
+
+    private MediaBuffer(Pool pool, byte[] memory, int size, String fileSuffix, Path file, MappedByteBuffer mapped) {
+        this.pool = pool;
+        this.memory = memory;
+        this.size = size;
+        this.fileSuffix = fileSuffix;
+        this.file = file;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Read a stream fully into a buffer, the stream is not closed
+     * @param in
+     * @param pool
+     * @param fileSuffix suffix of temp files, e.g. the file extension so content types can be guessed from the path
+     * @return
+     * @throws IOException if reading fails, nothing is left behind
+     */
+    public static MediaBuffer readFrom(InputStream in, Pool pool, String fileSuffix) throws IOException {
+        byte[] memory = pool.acquire();
+        try {
+            int count = in.readNBytes(memory, 0, memory.length);
+            int next = count < memory.length ? -1 : in.read();
+            if (next == -1) {
+                return new MediaBuffer(pool, memory, count, fileSuffix, null, null);
+            }
+            Path file = Files.createTempFile("uci-media-", fileSuffix);
+            MappedByteBuffer mapped;
+            long size;
+            try {
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    out.write(memory, 0, count);
+                    out.write(next);
+                    size = count + 1 + in.transferTo(out);
+                }
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Media too large to buffer: " + size);
+                }
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            pool.release(memory);
+            return new MediaBuffer(pool, null, (int) size, fileSuffix, file, mapped);
+        } catch (IOException | RuntimeException e) {
+            pool.release(memory);
+            throw e;
+        }
+    }
+
+    /**
+     * @return size in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if kept in memory, false if spilled to a temp file
+     */
+    public boolean isInMemory() {
+        return memory != null;
+    }
+
+    /**
+     * Open a new stream over the buffered media
+     * @return
+     */
+    public InputStream openStream() {
+        if (memory != null) {
+            return new ByteArrayInputStream(memory, 0, size);
+        }
+        return new ByteBufferInputStream(mapped.duplicate());
+    }
+
+    /**
+     * Get a read only view of the buffered media, for uploads that take byte buffers.
+     * The view is only valid until the buffer is closed.
+     * @return
+     */
+    public ByteBuffer toByteBuffer() {
+        if (memory != null) {
+            return ByteBuffer.wrap(memory, 0, size).slice().asReadOnlyBuffer();
+        }
+        return mapped.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a file with the media, for uploads that need a path. In memory media is written to a temp file
+     * on first call, deleted on close.
+     * @return
+     * @throws IOException
+     */
+    public synchronized Path toPath() throws IOException {
+        if (file == null) {
+            file = Files.createTempFile("uci-media-", fileSuffix);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                out.write(memory, 0, size);
+            }
+        }
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (memory != null) {
+            pool.release(memory);
+            memory = null;
+        }
+        /* Unmapped once collected, the file can be deleted while mapped on linux */
+        mapped = null;
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.error("MediaBuffer:close::Exception deleting " + file + ": " + e.getMessage());
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Pool of fixed size heap arrays, the array size is the memory threshold
+     */
+    public static class Pool {
+        private final int bufferSize;
+        private final BlockingQueue<byte[]> free;
+
+        /**
+         * @param bufferSize memory threshold, larger media is spilled to disk
+         * @param maxPooled max idle arrays kept
+         */
+        public Pool(int bufferSize, int maxPooled) {
+            this.bufferSize = bufferSize;
+            this.free = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+        }
+
+        private byte[] acquire() {
+            byte[] buffer = free.poll();
+            return buffer != null ? buffer : new byte[bufferSize];
+        }
+
+        private void release(byte[] buffer) {
+            free.offer(buffer);
+        }
+
+        /**
+         * @return idle arrays in the pool
+         */
+        public int getPooledCount() {
+            return free.size();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.uci.adapter.media;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Optional index of uploaded media by content hash, kept in memory & backed by redis,
+ * so that identical media is uploaded to the cdn once.
+ */
+@Slf4j
+@Component
+public class MediaDedupeIndex {
+
+    private static final String REDIS_KEY_PREFIX = "media-dedupe:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Getter
+    private final boolean enabled;
+
+    private final Duration ttl;
+
+    private final Cache<String, String> objectNames;
+
+    @Autowired
+    public MediaDedupeIndex(RedisTemplate<String, Object> redisTemplate,
+                            @Value("${media.dedupe.enabled:#{false}}") boolean enabled,
+                            @Value("${media.dedupe.cache.maxSize:#{100000}}") long maxSize,
+                            @Value("${media.dedupe.ttlDays:#{7}}") long ttlDays) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.ttl = Duration.ofDays(ttlDays);
+        this.objectNames = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Get the cdn object name of already uploaded media
+     * @param mimeType
+     * @param contentHash hex sha-256 of the media
+     * @return object name, null if not uploaded yet
+     */
+    public String getObjectName(String mimeType, String contentHash) {
+        String key = mimeType + ":" + contentHash;
+        String name = objectNames.getIfPresent(key);
+        if (name != null) {
+            return name;
+        }
+        try {
+            Object remote = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key);
+            if (remote != null) {
+                objectNames.put(key, remote.toString());
+                return remote.toString();
+            }
+        } catch (Exception e) {
+            log.error("MediaDedupeIndex:getObjectName::Redis exception for " + key + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Index the cdn object name of uploaded media
+     * @param mimeType
+     * @param contentHash hex sha-256 of the media
+     * @param name
+     */
+    public void put(String mimeType, String contentHash, String name) {
+        String key = mimeType + ":" + contentHash;
+        objectNames.put(key, name);
+        try {
+            redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + key, name, ttl);
+        } catch (Exception e) {
+            log.error("MediaDedupeIndex:put::Redis exception for " + key + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.uci.adapter.media;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An open media download, with the size declared by the vendor. Closing it releases the underlying response.
+ */
+@Getter
+public class MediaDownload implements Closeable {
+
+    private final InputStream stream;
+
+    /* Declared size in bytes, -1 if unknown */
+    private final long contentLength;
+
+    private final Closeable response;
+
+    /**
+     * @param stream media body
+     * @param contentLength declared size in bytes, -1 if unknown
+     * @param response closed with the download, e.g. the http response
+     */
+    public MediaDownload(InputStream stream, long contentLength, Closeable response) {
+        this.stream = stream;
+        this.contentLength = contentLength;
+        this.response = response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            stream.close();
+        } finally {
+            response.close();
+        }
+    }
+}
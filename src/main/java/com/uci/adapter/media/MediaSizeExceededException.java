@@ -0,0 +1,23 @@
+package com.uci.adapter.media;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Thrown while reading media once more than the allowed bytes were read
+ */
+@Getter
+public class MediaSizeExceededException extends IOException {
+
+    private final long maxBytes;
+
+    /* Bytes read when the limit was crossed, the actual size may be larger */
+    private final long readBytes;
+
+    public MediaSizeExceededException(long maxBytes, long readBytes) {
+        super("Media size exceeds limit of " + maxBytes + " bytes");
+        this.maxBytes = maxBytes;
+        this.readBytes = readBytes;
+    }
+}
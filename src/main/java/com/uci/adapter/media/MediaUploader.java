@@ -0,0 +1,302 @@
+package com.uci.adapter.media;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.uci.adapter.cdn.FileCdnProvider;
+import com.uci.adapter.utils.MediaSizeLimit;
+import com.uci.utils.bot.util.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+import messagerosa.core.model.MessageMediaError;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams inbound media from the vendor to the file cdn, aborting once the media size limit of its mime type is crossed.
+ *
+ * Results are maps with the name & url of the uploaded file, and the size & error if it was not uploaded.
+ */
+@Slf4j
+@Component
+public class MediaUploader {
+
+    private final MediaSizeLimit mediaSizeLimit;
+
+    private final OkHttpClient client;
+
+    private final MediaDedupeIndex dedupeIndex;
+
+    private final MediaBuffer.Pool bufferPool;
+
+    private final int memoryThresholdBytes;
+
+    private final Environment environment;
+
+    private final int defaultMaxConcurrency;
+
+    private final Duration defaultTimeout;
+
+    /* Bounded schedulers by provider, so one slow provider's media can not use up the others' threads */
+    private final Map<String, Scheduler> schedulers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MediaUploader(MediaSizeLimit mediaSizeLimit,
+                         MediaDedupeIndex dedupeIndex,
+                         Environment environment,
+                         @Value("${media.download.connectTimeoutMs:#{10000}}") long connectTimeoutMs,
+                         @Value("${media.download.readTimeoutMs:#{60000}}") long readTimeoutMs,
+                         @Value("${media.inbound.maxConcurrency:#{8}}") int defaultMaxConcurrency,
+                         @Value("${media.inbound.timeoutSeconds:#{120}}") long defaultTimeoutSeconds,
+                         @Value("${media.buffer.memoryThresholdBytes:#{262144}}") int memoryThresholdBytes,
+                         @Value("${media.buffer.maxPooled:#{32}}") int maxPooledBuffers) {
+        this.mediaSizeLimit = mediaSizeLimit;
+        this.dedupeIndex = dedupeIndex;
+        this.bufferPool = new MediaBuffer.Pool(memoryThresholdBytes, maxPooledBuffers);
+        this.memoryThresholdBytes = memoryThresholdBytes;
+        this.environment = environment;
+        this.defaultMaxConcurrency = defaultMaxConcurrency;
+        this.defaultTimeout = Duration.ofSeconds(defaultTimeoutSeconds);
+        this.client = new OkHttpClient().newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Download media from url & upload it to the cdn without blocking the caller, limited by the provider's
+     * concurrency & timeout (media.inbound.{provider}.maxConcurrency/timeoutSeconds)
+     * @param provider e.g. gupshup
+     * @param mediaUrl
+     * @param mimeType
+     * @param messageId
+     * @param fileCdnProvider
+     * @return
+     */
+    public Mono<Map<String, Object>> uploadFromUrlAsync(String provider, String mediaUrl, String mimeType, String messageId,
+                                                        FileCdnProvider fileCdnProvider) {
+        return async(provider, messageId, () -> uploadFromUrl(mediaUrl, mimeType, messageId, fileCdnProvider));
+    }
+
+    /**
+     * Open a media stream & upload it to the cdn without blocking the caller, limited by the provider's
+     * concurrency & timeout (media.inbound.{provider}.maxConcurrency/timeoutSeconds)
+     * @param provider e.g. netcore
+     * @param opener opens the media download, may return null if there is no media
+     * @param mimeType
+     * @param messageId
+     * @param fileCdnProvider
+     * @return
+     */
+    public Mono<Map<String, Object>> uploadAsync(String provider, Callable<MediaDownload> opener, String mimeType, String messageId,
+                                                 FileCdnProvider fileCdnProvider) {
+        return async(provider, messageId, () -> upload(opener.call(), mimeType, messageId, fileCdnProvider));
+    }
+
+    @PreDestroy
+    public void dispose() {
+        schedulers.values().forEach(Scheduler::dispose);
+    }
+
+    /**
+     * Download & buffer media on the provider's bounded scheduler, then upload it with the cdn's async upload
+     */
+    private Mono<Map<String, Object>> async(String provider, String messageId, Callable<Mono<Map<String, Object>>> upload) {
+        Duration timeout = Duration.ofSeconds(environment.getProperty("media.inbound." + provider + ".timeoutSeconds",
+                Long.class, defaultTimeout.getSeconds()));
+        return Mono.fromCallable(upload)
+                .subscribeOn(getScheduler(provider))
+                .flatMap(result -> result)
+                .timeout(timeout)
+                .onErrorResume(e -> {
+                    log.error("MediaUploader:async::" + provider + " media of message " + messageId + " failed: " + e.getMessage());
+                    return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+                });
+    }
+
+    private Scheduler getScheduler(String provider) {
+        return schedulers.computeIfAbsent(provider, name -> Schedulers.newBoundedElastic(
+                environment.getProperty("media.inbound." + name + ".maxConcurrency", Integer.class, defaultMaxConcurrency),
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+                "media-" + name));
+    }
+
+    /**
+     * Download media from url & upload it to the cdn, the download is blocking & the upload is not
+     * @param mediaUrl
+     * @param mimeType
+     * @param messageId
+     * @param fileCdnProvider
+     * @return
+     */
+    public Mono<Map<String, Object>> uploadFromUrl(String mediaUrl, String mimeType, String messageId, FileCdnProvider fileCdnProvider) {
+        if (mediaUrl == null || mediaUrl.isEmpty()) {
+            return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+        }
+        Request request = new Request.Builder().url(mediaUrl).get().build();
+        Response response = null;
+        try {
+            response = client.newCall(request).execute();
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                log.error("MediaUploader:uploadFromUrl::media download failed, status: " + response.code());
+                response.close();
+                return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+            }
+            return upload(new MediaDownload(body.byteStream(), body.contentLength(), response), mimeType, messageId, fileCdnProvider);
+        } catch (IOException e) {
+            if (response != null) {
+                response.close();
+            }
+            log.error("MediaUploader:uploadFromUrl::Exception in media download: " + e.getMessage());
+            return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+        }
+    }
+
+    /**
+     * Upload a media download to the cdn, the download is always closed before this returns.
+     * Media declared larger than the memory threshold is streamed from the download to the cdn, other media
+     * is buffered & uploaded asynchronously, the buffer is closed once the upload terminates. Deduplicated
+     * media is always buffered, it is hashed before the upload.
+     * Media declared larger than the limit is rejected before reading any of it, media of unknown size
+     * is read only up to the limit.
+     * @param download media download, null if there is no media
+     * @param mimeType
+     * @param messageId
+     * @param fileCdnProvider
+     * @return
+     */
+    public Mono<Map<String, Object>> upload(MediaDownload download, String mimeType, String messageId, FileCdnProvider fileCdnProvider) {
+        if (download == null) {
+            return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+        }
+        Double maxSizeForMedia = mediaSizeLimit.getMaxSizeForMedia(mimeType);
+        long maxBytes = maxSizeForMedia != null ? maxSizeForMedia.longValue() : -1;
+        try (download;
+             PushbackInputStream media = new PushbackInputStream(new SizeLimitedInputStream(download.getStream(), maxBytes))) {
+            if (download.getContentLength() == 0) {
+                return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+            }
+            if (maxBytes >= 0 && download.getContentLength() > maxBytes) {
+                log.error("MediaUploader:upload::declared media size " + download.getContentLength() + " exceeds limit: " + maxBytes + ", mime: " + mimeType);
+                return Mono.just(errorResult(download.getContentLength(), MessageMediaError.PAYLOAD_TO_LARGE));
+            }
+            int first = media.read();
+            if (first == -1) {
+                return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+            }
+            media.unread(first);
+
+            /* Unique File Name */
+            String name = FileUtil.getUploadedFileName(mimeType, messageId);
+            if (dedupeIndex.isEnabled()) {
+                return uploadDeduplicated(media, name, mimeType, messageId, fileCdnProvider);
+            }
+            if (download.getContentLength() > memoryThresholdBytes) {
+                return Mono.just(uploadedResult(name, fileCdnProvider.uploadFileFromInputStream(media, name)));
+            }
+            MediaBuffer buffer = MediaBuffer.readFrom(media, bufferPool, getExtension(name));
+            return uploadBuffer(buffer, name, fileCdnProvider)
+                    .map(url -> uploadedResult(name, url));
+        } catch (MediaSizeExceededException e) {
+            log.error("MediaUploader:upload::media size exceeds limit: " + e.getMaxBytes() + ", mime: " + mimeType);
+            return Mono.just(errorResult(e.getReadBytes(), MessageMediaError.PAYLOAD_TO_LARGE));
+        } catch (IOException e) {
+            log.error("MediaUploader:upload::Exception in media upload: " + e.getMessage());
+            return Mono.just(errorResult(0, MessageMediaError.EMPTY_RESPONSE));
+        }
+    }
+
+    /**
+     * Upload a buffer with the cdn's async upload, closing the buffer once the upload terminates or is cancelled
+     * @param buffer
+     * @param name
+     * @param fileCdnProvider
+     * @return signed url
+     */
+    private Mono<String> uploadBuffer(MediaBuffer buffer, String name, FileCdnProvider fileCdnProvider) {
+        return Mono.using(() -> buffer, b -> fileCdnProvider.uploadFileFromBufferAsync(b, name), MediaBuffer::close);
+    }
+
+    /**
+     * Hash media while buffering it, upload it only if no media with the same hash was uploaded.
+     * The index lookup blocks, so this is called on the provider's scheduler.
+     * @param media
+     * @param name name to upload as
+     * @param mimeType
+     * @param messageId
+     * @param fileCdnProvider
+     * @return
+     * @throws IOException
+     */
+    private Mono<Map<String, Object>> uploadDeduplicated(InputStream media, String name, String mimeType, String messageId,
+                                                         FileCdnProvider fileCdnProvider) throws IOException {
+        HashingInputStream hashing = new HashingInputStream(Hashing.sha256(), media);
+        MediaBuffer buffer = MediaBuffer.readFrom(hashing, bufferPool, getExtension(name));
+        String contentHash = hashing.hash().toString();
+
+        try {
+            String existing = dedupeIndex.getObjectName(mimeType, contentHash);
+            if (existing != null) {
+                String url = fileCdnProvider.getFileSignedUrl(existing);
+                if (url != null && !url.isEmpty()) {
+                    log.info("MediaUploader:uploadDeduplicated::reusing " + existing + " for message " + messageId);
+                    buffer.close();
+                    return Mono.just(uploadedResult(existing, url));
+                }
+            }
+        } catch (RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+
+        /* The index write blocks, so it is not done on the cdn client's threads */
+        return uploadBuffer(buffer, name, fileCdnProvider)
+                .publishOn(Schedulers.boundedElastic())
+                .map(url -> {
+                    if (url != null && !url.isEmpty()) {
+                        dedupeIndex.put(mimeType, contentHash, name);
+                    }
+                    return uploadedResult(name, url);
+                });
+    }
+
+    private static String getExtension(String name) {
+        int extension = name.lastIndexOf('.');
+        return extension >= 0 ? name.substring(extension) : "";
+    }
+
+    private Map<String, Object> uploadedResult(String name, String url) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("name", name);
+        result.put("url", url);
+        return result;
+    }
+
+    private Map<String, Object> errorResult(long size, MessageMediaError error) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("name", "");
+        result.put("url", "");
+        result.put("size", (double) size);
+        result.put("error", error);
+        return result;
+    }
+}
@@ -0,0 +1,70 @@
+package com.uci.adapter.media;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts bytes read from the wrapped stream & fails the read that crosses the max size.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+
+    private long count;
+
+    /**
+     * @param in
+     * @param maxBytes max bytes allowed, negative for no limit
+     */
+    public SizeLimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            add(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            add(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            add(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return bytes read so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private void add(long n) throws MediaSizeExceededException {
+        count += n;
+        if (maxBytes >= 0 && count > maxBytes) {
+            throw new MediaSizeExceededException(maxBytes, count);
+        }
+    }
+}
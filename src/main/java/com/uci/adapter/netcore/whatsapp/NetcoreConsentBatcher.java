@@ -0,0 +1,133 @@
+package com.uci.adapter.netcore.whatsapp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.uci.adapter.netcore.whatsapp.outbound.OutboundOptInOutMessage;
+import com.uci.adapter.netcore.whatsapp.outbound.SendMessageResponse;
+import com.uci.adapter.netcore.whatsapp.outbound.SingleOptInOutMessage;
+import com.uci.adapter.utils.MicroBatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batches netcore opt in/out requests into multi recipient consent calls, each number gets the result
+ * of its own recipient in the response.
+ * Numbers whose consent was updated within the ttl are not sent again.
+ */
+@Slf4j
+@Component
+public class NetcoreConsentBatcher {
+
+    private static final String OPT_IN = "optin";
+    private static final String OPT_OUT = "optout";
+
+    private final NewNetcoreService newNetcoreService;
+
+    private final Cache<String, Boolean> consented;
+
+    private final MicroBatcher<String, Boolean> optInBatcher;
+
+    private final MicroBatcher<String, Boolean> optOutBatcher;
+
+    @Autowired
+    public NetcoreConsentBatcher(NewNetcoreService newNetcoreService,
+                                 @Value("${netcore.consent.batch.maxSize:#{100}}") int maxSize,
+                                 @Value("${netcore.consent.batch.maxWaitMs:#{200}}") long maxWaitMs,
+                                 @Value("${netcore.consent.batch.maxInFlight:#{4}}") int maxInFlight,
+                                 @Value("${netcore.consent.ttlHours:#{24}}") long ttlHours,
+                                 @Value("${netcore.consent.cache.maxSize:#{1000000}}") long cacheMaxSize) {
+        this.newNetcoreService = newNetcoreService;
+        this.consented = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofHours(ttlHours))
+                .build();
+        this.optInBatcher = new MicroBatcher<>("netcore-optin", maxSize, Duration.ofMillis(maxWaitMs), maxInFlight,
+                phoneNumbers -> send(OPT_IN, phoneNumbers));
+        this.optOutBatcher = new MicroBatcher<>("netcore-optout", maxSize, Duration.ofMillis(maxWaitMs), maxInFlight,
+                phoneNumbers -> send(OPT_OUT, phoneNumbers));
+    }
+
+    /**
+     * Opt in a number
+     * @param phoneNumber
+     * @return true if opted in now or within the ttl
+     */
+    public Mono<Boolean> optIn(String phoneNumber) {
+        return submit(OPT_IN, phoneNumber, optInBatcher);
+    }
+
+    /**
+     * Opt out a number
+     * @param phoneNumber
+     * @return true if opted out now or within the ttl
+     */
+    public Mono<Boolean> optOut(String phoneNumber) {
+        return submit(OPT_OUT, phoneNumber, optOutBatcher);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        optInBatcher.dispose();
+        optOutBatcher.dispose();
+    }
+
+    private Mono<Boolean> submit(String type, String phoneNumber, MicroBatcher<String, Boolean> batcher) {
+        if (consented.getIfPresent(type + ":" + phoneNumber) != null) {
+            return Mono.just(true);
+        }
+        return batcher.submit(phoneNumber)
+                .onErrorResume(e -> Mono.just(false));
+    }
+
+    /**
+     * Send one consent call for the distinct numbers of a batch
+     * @param type
+     * @param phoneNumbers
+     * @return result of each given number from its recipient response, in order
+     */
+    private Mono<List<Boolean>> send(String type, List<String> phoneNumbers) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(phoneNumbers));
+        SingleOptInOutMessage[] recipients = distinct.stream()
+                .map(phoneNumber -> SingleOptInOutMessage.builder().from("WEB").to(phoneNumber).build())
+                .toArray(SingleOptInOutMessage[]::new);
+        OutboundOptInOutMessage message = OutboundOptInOutMessage.builder()
+                .type(type)
+                .recipients(recipients)
+                .build();
+        return newNetcoreService.sendOutboundOptInOutMessageBatch(message)
+                .map(responses -> {
+                    String opposite = OPT_IN.equals(type) ? OPT_OUT : OPT_IN;
+                    Map<String, Boolean> results = new HashMap<>();
+                    int failed = 0;
+                    for (int i = 0; i < distinct.size(); i++) {
+                        String phoneNumber = distinct.get(i);
+                        SendMessageResponse response = responses.get(i);
+                        boolean success = "success".equals(response.getStatus()) && response.getError() == null;
+                        if (success) {
+                            consented.put(type + ":" + phoneNumber, Boolean.TRUE);
+                            consented.invalidate(opposite + ":" + phoneNumber);
+                        } else {
+                            failed++;
+                            log.error("Netcore Outbound Api - Opt IN/OUT Error Response, type: " + type + ", recipient: " + phoneNumber
+                                    + ", error: " + (response.getError() != null ? response.getError().getMessage() : response.getMessage()));
+                        }
+                        results.put(phoneNumber, success);
+                    }
+                    log.info("Netcore Outbound Api - Opt IN/OUT Response, type: " + type + ", recipients: " + distinct.size() + ", failed: " + failed);
+                    List<Boolean> ordered = new ArrayList<>(phoneNumbers.size());
+                    phoneNumbers.forEach(phoneNumber -> ordered.add(results.get(phoneNumber)));
+                    return ordered;
+                });
+    }
+}
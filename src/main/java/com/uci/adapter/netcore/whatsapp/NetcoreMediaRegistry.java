@@ -0,0 +1,189 @@
+package com.uci.adapter.netcore.whatsapp;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional registry of outbound media uploaded to netcore, by media url. Each url is fetched from the cdn
+ * & uploaded to netcore once, later messages reference the returned netcore media id instead of the url,
+ * so a broadcast does not make netcore fetch the same cdn object per recipient.
+ *
+ * Ids are kept in memory & backed by redis until the ttl after their upload, which should stay below netcore's
+ * media expiry. Ids read from redis expire in memory with their remaining redis ttl, not a new one.
+ */
+@Slf4j
+@Component
+public class NetcoreMediaRegistry {
+
+    private static final String REDIS_KEY_PREFIX = "netcore-media:";
+
+    private final NewNetcoreService newNetcoreService;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final WebClient downloadClient;
+
+    @Getter
+    private final boolean enabled;
+
+    private final Duration ttl;
+
+    private final Duration timeout;
+
+    /* Concurrent lookups of the same url share one upload */
+    private final AsyncCache<String, MediaId> mediaIds;
+
+    @Autowired
+    public NetcoreMediaRegistry(NewNetcoreService newNetcoreService,
+                                RedisTemplate<String, Object> redisTemplate,
+                                VendorHttpClientFactory httpClientFactory,
+                                @Value("${netcore.media.registry.enabled:#{false}}") boolean enabled,
+                                @Value("${netcore.media.registry.cache.maxSize:#{10000}}") long maxSize,
+                                @Value("${netcore.media.registry.ttlHours:#{168}}") long ttlHours,
+                                @Value("${netcore.media.registry.timeoutSeconds:#{120}}") long timeoutSeconds) {
+        this.newNetcoreService = newNetcoreService;
+        this.redisTemplate = redisTemplate;
+        this.downloadClient = httpClientFactory.getWebClient(HttpVendor.transport);
+        this.enabled = enabled;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+        this.mediaIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, MediaId>() {
+                    @Override
+                    public long expireAfterCreate(String url, MediaId mediaId, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, mediaId.expiresAt - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String url, MediaId mediaId, long currentTime, long currentDuration) {
+                        return expireAfterCreate(url, mediaId, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String url, MediaId mediaId, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync();
+    }
+
+    /**
+     * Get the netcore media id of a media url, uploading the media on first use
+     * @param mediaUrl
+     * @return media id, empty if the media could not be uploaded - send the url then
+     */
+    public Mono<String> getMediaId(String mediaUrl) {
+        if (!enabled || mediaUrl == null || mediaUrl.isEmpty()) {
+            return Mono.empty();
+        }
+        /* A future completed with null is not cached, so failed uploads are retried by the next message */
+        return Mono.fromFuture(mediaIds.get(mediaUrl, (url, executor) -> lookupOrUpload(url).toFuture()))
+                .map(mediaId -> mediaId.id);
+    }
+
+    private Mono<MediaId> lookupOrUpload(String mediaUrl) {
+        /* Blocking redis calls run on bounded elastic threads, lookups may come from event loop threads */
+        return Mono.fromCallable(() -> getRemote(mediaUrl))
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(Mono.defer(() -> upload(mediaUrl))
+                        .map(id -> new MediaId(id, System.currentTimeMillis() + ttl.toMillis()))
+                        .flatMap(mediaId -> Mono.fromRunnable(() -> putRemote(mediaUrl, mediaId.id))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .thenReturn(mediaId)))
+                .timeout(timeout)
+                .onErrorResume(e -> {
+                    log.error("NetcoreMediaRegistry:lookupOrUpload::Exception for " + mediaUrl + ": " + e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Stream media from the cdn to netcore, without buffering it
+     * @param mediaUrl
+     * @return
+     */
+    private Mono<String> upload(String mediaUrl) {
+        /* URI.create so signed url query strings are not encoded again */
+        URI uri = URI.create(mediaUrl);
+        return downloadClient.get()
+                .uri(uri)
+                .exchangeToMono(response -> {
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        log.error("NetcoreMediaRegistry:upload::media download failed, status: " + response.rawStatusCode());
+                        return response.releaseBody().then(Mono.empty());
+                    }
+                    MediaType contentType = response.headers().contentType().orElse(MediaType.APPLICATION_OCTET_STREAM);
+                    return newNetcoreService.uploadMedia(response.bodyToFlux(DataBuffer.class), getFileName(uri), contentType);
+                })
+                .doOnNext(id -> log.info("NetcoreMediaRegistry:upload::uploaded " + uri.getPath() + " as " + id));
+    }
+
+    /**
+     * Get the media id of a url from redis, with its remaining ttl
+     * @param mediaUrl
+     * @return null if not found or about to expire
+     */
+    private MediaId getRemote(String mediaUrl) {
+        try {
+            String key = REDIS_KEY_PREFIX + mediaUrl;
+            Object id = redisTemplate.opsForValue().get(key);
+            if (id == null) {
+                return null;
+            }
+            Long remainingMs = redisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+            if (remainingMs == null || remainingMs <= 0) {
+                return null;
+            }
+            return new MediaId(id.toString(), System.currentTimeMillis() + remainingMs);
+        } catch (Exception e) {
+            log.error("NetcoreMediaRegistry:getRemote::Redis exception: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void putRemote(String mediaUrl, String id) {
+        try {
+            redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + mediaUrl, id, ttl);
+        } catch (Exception e) {
+            log.error("NetcoreMediaRegistry:putRemote::Redis exception: " + e.getMessage());
+        }
+    }
+
+    private static class MediaId {
+        private final String id;
+        /* Epoch millis the id expires at, the ttl after its upload */
+        private final long expiresAt;
+
+        private MediaId(String id, long expiresAt) {
+            this.id = id;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static String getFileName(URI uri) {
+        String path = uri.getPath();
+        if (path == null || path.isEmpty() || path.endsWith("/")) {
+            return "media";
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
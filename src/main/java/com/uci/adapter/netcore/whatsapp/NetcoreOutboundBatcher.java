@@ -0,0 +1,74 @@
+package com.uci.adapter.netcore.whatsapp;
+
+import com.uci.adapter.netcore.whatsapp.outbound.OutboundMessage;
+import com.uci.adapter.netcore.whatsapp.outbound.SendMessageResponse;
+import com.uci.adapter.netcore.whatsapp.outbound.SingleMessage;
+import com.uci.adapter.utils.MicroBatcher;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Optional micro batching of netcore outbound messages: concurrent single sends are
+ * posted as one multi message request, each sender gets the response of its own message.
+ */
+@Slf4j
+@Component
+public class NetcoreOutboundBatcher {
+
+    private final NewNetcoreService newNetcoreService;
+
+    @Getter
+    private final boolean enabled;
+
+    @Getter
+    private final int maxBatchSize;
+
+    @Getter
+    private final int maxInFlight;
+
+    private final MicroBatcher<SingleMessage, SendMessageResponse> batcher;
+
+    @Autowired
+    public NetcoreOutboundBatcher(NewNetcoreService newNetcoreService,
+                                  @Value("${netcore.outbound.batch.enabled:#{false}}") boolean enabled,
+                                  @Value("${netcore.outbound.batch.maxSize:#{50}}") int maxBatchSize,
+                                  @Value("${netcore.outbound.batch.maxWaitMs:#{20}}") long maxWaitMs,
+                                  @Value("${netcore.outbound.batch.maxInFlight:#{8}}") int maxInFlight) {
+        this.newNetcoreService = newNetcoreService;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxInFlight = maxInFlight;
+        this.batcher = enabled
+                ? new MicroBatcher<>("netcore-outbound", maxBatchSize, Duration.ofMillis(maxWaitMs), maxInFlight,
+                        messages -> newNetcoreService.sendOutboundMessageBatch(OutboundMessage.builder()
+                                .message(messages.toArray(new SingleMessage[0]))
+                                .build()))
+                : null;
+    }
+
+    /**
+     * Send a message, batched with concurrent sends when batching is enabled
+     * @param message
+     * @return
+     */
+    public Mono<SendMessageResponse> send(SingleMessage message) {
+        if (batcher == null) {
+            return newNetcoreService.sendOutboundMessage(OutboundMessage.builder().message(new SingleMessage[]{message}).build());
+        }
+        return batcher.submit(message);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.uci.adapter.netcore.whatsapp;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.uci.adapter.utils.JsonCodecs;
 import com.uci.adapter.netcore.whatsapp.outbound.ManageUserRequestMessage;
 import com.uci.adapter.netcore.whatsapp.outbound.ManageUserResponse;
 import com.uci.adapter.netcore.whatsapp.outbound.OutboundMessage;
@@ -11,6 +13,10 @@ import okhttp3.*;
 import java.io.IOException;
 
 public class NetcoreService {
+    private static final ObjectWriter MANAGE_USER_WRITER = JsonCodecs.writerFor(ManageUserRequestMessage.class);
+    private static final ObjectWriter MESSAGE_WRITER = JsonCodecs.writerFor(OutboundMessage.class);
+    private static final ObjectReader MANAGE_USER_READER = JsonCodecs.readerFor(ManageUserResponse.class);
+    private static final ObjectReader SEND_RESPONSE_READER = JsonCodecs.readerFor(SendMessageResponse.class);
 
     private OkHttpClient client;
     private MediaType mediaType;
@@ -26,10 +32,9 @@ public class NetcoreService {
     }
 
     public ManageUserResponse manageUser(ManageUserRequestMessage message){
-        ObjectMapper mapper = new ObjectMapper();
         RequestBody body = null;
         try {
-            body = RequestBody.create(mediaType,  mapper.writeValueAsString(message));
+            body = RequestBody.create(mediaType,  MANAGE_USER_WRITER.writeValueAsString(message));
             Request request = new Request.Builder()
                     .url(baseURL + "consent/manage")
                     .method("POST", body)
@@ -38,7 +43,7 @@ public class NetcoreService {
                     .build();
             Response response = client.newCall(request).execute();
             String json = response.body().toString();
-            return mapper.readValue(json, ManageUserResponse.class);
+            return MANAGE_USER_READER.readValue(json);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
             return null;
@@ -51,10 +56,9 @@ public class NetcoreService {
     }
 
     public SendMessageResponse sendText(OutboundMessage message){
-        ObjectMapper mapper = new ObjectMapper();
         RequestBody body = null;
         try {
-            body = RequestBody.create(mediaType,  mapper.writeValueAsString(message));
+            body = RequestBody.create(mediaType,  MESSAGE_WRITER.writeValueAsString(message));
             Request request = new Request.Builder()
                     .url(baseURL + "message/")
                     .method("POST", body)
@@ -63,7 +67,7 @@ public class NetcoreService {
                     .build();
             Response response = client.newCall(request).execute();
             String json = response.body().string();
-            return mapper.readValue(json, SendMessageResponse.class);
+            return SEND_RESPONSE_READER.readValue(json);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
             return null;
@@ -1,5 +1,6 @@
 package com.uci.adapter.netcore.whatsapp;
 
+import com.google.common.collect.Lists;
 import com.uci.adapter.cdn.FileCdnProvider;
 import com.uci.adapter.netcore.whatsapp.inbound.NetcoreLocation;
 import com.uci.adapter.netcore.whatsapp.inbound.NetcoreWhatsAppMessage;
@@ -7,7 +8,6 @@ import com.uci.adapter.netcore.whatsapp.outbound.MessageType;
 import com.uci.adapter.netcore.whatsapp.outbound.OutboundMessage;
 import com.uci.adapter.netcore.whatsapp.outbound.SendMessageResponse;
 import com.uci.adapter.netcore.whatsapp.outbound.SingleMessage;
-import com.uci.adapter.netcore.whatsapp.outbound.SingleOptInOutMessage;
 import com.uci.adapter.netcore.whatsapp.outbound.Text;
 import com.uci.adapter.netcore.whatsapp.outbound.interactive.Action;
 import com.uci.adapter.netcore.whatsapp.outbound.interactive.InteractiveContent;
@@ -18,11 +18,11 @@ import com.uci.adapter.netcore.whatsapp.outbound.interactive.quickreply.ReplyBut
 import com.uci.adapter.netcore.whatsapp.outbound.media.Attachment;
 import com.uci.adapter.netcore.whatsapp.outbound.media.AttachmentType;
 import com.uci.adapter.netcore.whatsapp.outbound.media.MediaContent;
-import com.uci.adapter.netcore.whatsapp.outbound.OutboundOptInOutMessage;
 import com.uci.adapter.provider.factory.AbstractProvider;
 import com.uci.adapter.provider.factory.IProvider;
 import com.uci.adapter.cdn.service.SunbirdCloudMediaService;
 import com.uci.adapter.utils.CommonUtils;
+import com.uci.adapter.media.MediaUploader;
 import com.uci.adapter.utils.MediaSizeLimit;
 import com.uci.utils.BotService;
 import com.uci.utils.bot.util.FileUtil;
@@ -46,6 +46,7 @@ import java.io.IOException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -73,6 +74,18 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
 	@Autowired
 	private NewNetcoreService newNetcoreService;
 
+	@Autowired
+	private NetcoreConsentBatcher consentBatcher;
+
+	@Autowired
+	private NetcoreOutboundBatcher outboundBatcher;
+
+	@Autowired
+	private MediaUploader mediaUploader;
+
+	@Autowired
+	private NetcoreMediaRegistry mediaRegistry;
+
 	/**
      * Convert Inbound Netcore Message To XMessage
      */
@@ -143,14 +156,16 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
 
             XMessage.MessageState finalMessageState = messageState;
             messageIdentifier.setReplyId(message.getReplyId());
-            
-            xmsgPayload.setMedia(getInboundMediaMessage(message));
-        	
+
             xmsgPayload.setText("");
-            
+
             messageIdentifier.setChannelMessageId(message.getMessageId());
 
-            return Mono.just(processedXMessage(message, xmsgPayload, to, from, finalMessageState, messageIdentifier,messageType));
+            /* Media is downloaded & uploaded on the netcore media scheduler, not the converting thread */
+            return getInboundMediaMessage(message).map(media -> {
+                xmsgPayload.setMedia(media);
+                return processedXMessage(message, xmsgPayload, to, from, finalMessageState, messageIdentifier,messageType);
+            });
         } else if (message.getType().equals("button")) {
             from.setUserID(message.getMobile().substring(2));
             // Get the last message sent to this user using the reply-messageID
@@ -189,20 +204,22 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
      * @param message
      * @return
      */
-    private MessageMedia getInboundMediaMessage(NetcoreWhatsAppMessage message) {
+    private Mono<MessageMedia> getInboundMediaMessage(NetcoreWhatsAppMessage message) {
     	Map<String, Object> mediaInfo = getMediaInfo(message);
-    	Map<String, Object> mediaData = uploadInboundMediaFile(message.getMessageId(), mediaInfo.get("id").toString(), mediaInfo.get("mime_type").toString());
-    	MessageMedia media = new MessageMedia();
-    	media.setText(mediaData.get("name").toString());
-    	media.setUrl(mediaData.get("url").toString());
-    	media.setCategory((MediaCategory) mediaInfo.get("category"));
-		if(mediaData.get("error") != null) {
-			media.setMessageMediaError((MessageMediaError) mediaData.get("error"));
-		}
-		if(mediaData.get("size") != null) {
-			media.setSize((Double) mediaData.get("size"));
-		}
-		return media;
+    	return uploadInboundMediaFile(message.getMessageId(), mediaInfo.get("id").toString(), mediaInfo.get("mime_type").toString())
+				.map(mediaData -> {
+					MessageMedia media = new MessageMedia();
+					media.setText(mediaData.get("name").toString());
+					media.setUrl(mediaData.get("url").toString());
+					media.setCategory((MediaCategory) mediaInfo.get("category"));
+					if(mediaData.get("error") != null) {
+						media.setMessageMediaError((MessageMediaError) mediaData.get("error"));
+					}
+					if(mediaData.get("size") != null) {
+						media.setSize((Double) mediaData.get("size"));
+					}
+					return media;
+				});
     }
     
     /**
@@ -259,62 +276,15 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
      * @param mime_type
      * @return
      */
-    private Map<String, Object> uploadInboundMediaFile(String messageId, String id, String mime_type) {
-    	Map<String, Object> result = new HashMap();
-    	
-    	String name = "";
-    	String url = "";
-
-		if(!id.isEmpty() && !mime_type.isEmpty()) {
-			try {
-				log.info("Get netcore media by id:" + id);
-				byte[] inputBytes = newNetcoreService.
-						getMediaFile(id).readAllBytes();
-
-				if (inputBytes != null) {
-					// if file size is greater than MAX_SIZE_FOR_MEDIA than discard the file
-					Double maxSizeForMedia = mediaSizeLimit.getMaxSizeForMedia(mime_type) ;
-//					result.put("size", (double) responseBytes.length);
-//
-//					log.info("yash : maxSizeForMedia, " + maxSizeForMedia + " actualSizeOfMedia, " + responseBytes.length);
-//					if (maxSizeForMedia != null && responseBytes.length > maxSizeForMedia) {
-//						log.info("file size is("+ responseBytes.length +") greater than limit : " + maxSizeForMedia);
-//						result.put("error", MessageMediaError.PAYLOAD_TO_LARGE);
-//					} else{
-//						String file = fileCdnProvider.uploadFileFromInputStream(new ByteArrayInputStream(responseBytes), mime_type, messageId);
-//						name = file;
-//						url = fileCdnProvider.getFileSignedUrl(file);
-//						log.info("azure file name: " + name + ", url: " + url);
-//					}
-
-					String sizeError = FileUtil.validateFileSizeByInputBytes(inputBytes, maxSizeForMedia);
-					if(sizeError.isEmpty()) {
-						/* Unique File Name */
-						name = FileUtil.getUploadedFileName(mime_type, messageId);
-						String filePath = FileUtil.fileToLocalFromBytes(inputBytes, mime_type, name);
-						if(!filePath.isEmpty()) {
-							url = fileCdnProvider.uploadFileFromPath(filePath, name);
-						} else {
-							result.put("size", 0d);
-							result.put("error", MessageMediaError.EMPTY_RESPONSE);
-						}
-					} else {
-						result.put("size", (double) inputBytes.length);
-						result.put("error", MessageMediaError.PAYLOAD_TO_LARGE);
-					}
-
-				} else {
-					result.put("size", 0d);
-					result.put("error", MessageMediaError.EMPTY_RESPONSE);
-				}
-			} catch (IOException e) {
-					e.printStackTrace();
-			}
+    private Mono<Map<String, Object>> uploadInboundMediaFile(String messageId, String id, String mime_type) {
+		if(id.isEmpty() || mime_type.isEmpty()) {
+			Map<String, Object> result = new HashMap();
+			result.put("name", "");
+			result.put("url", "");
+			return Mono.just(result);
 		}
-    	result.put("name", name);
-    	result.put("url", url);
-    	
-    	return result;
+		log.info("Get netcore media by id:" + id);
+		return mediaUploader.uploadAsync("netcore", () -> newNetcoreService.getMedia(id), mime_type, messageId, fileCdnProvider);
     }
 
     /**
@@ -413,25 +383,38 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
     	String phoneNo = "91" +xMsg.getTo().getUserID();
         SingleMessage message = getOutboundSingleMessage(xMsg, phoneNo);
         
-        return newNetcoreService.
-                sendOutboundMessage(OutboundMessage.builder().message(new SingleMessage[]{message}).build()).map(new Function<SendMessageResponse, XMessage>() {
+        return optInIfHsm(xMsg, message)
+                .then(resolveMediaIds(message))
+                .then(Mono.defer(() -> outboundBatcher.send(message))).map(new Function<SendMessageResponse, XMessage>() {
             @Override
             public XMessage apply(SendMessageResponse sendMessageResponse) {
-                if(sendMessageResponse != null){
-                	if(sendMessageResponse.getStatus().equals("success")) {
-                		xMsg.setMessageId(MessageId.builder().channelMessageId(sendMessageResponse.getData().getIdentifier()).build());
-                        xMsg.setMessageState(XMessage.MessageState.SENT);
-                	} else {
-                		log.error("Netcore Outbound Api Error Response: "+sendMessageResponse.getError().getMessage());
-                		return null;
-                	}
-                }
-                return xMsg;
+                return applySendResponse(xMsg, sendMessageResponse);
             }
         });
 
 
     }
+
+    /**
+     * Set message id & state of a xmessage from its netcore send response. Only messages with a channel
+     * message id are sent, later delivery reports are correlated by it.
+     * @param xMsg
+     * @param sendMessageResponse
+     * @return
+     */
+    private XMessage applySendResponse(XMessage xMsg, SendMessageResponse sendMessageResponse) {
+        if(sendMessageResponse != null){
+        	if("success".equals(sendMessageResponse.getStatus()) && sendMessageResponse.getData() != null
+                    && sendMessageResponse.getData().getIdentifier() != null && !sendMessageResponse.getData().getIdentifier().isEmpty()) {
+        		xMsg.setMessageId(MessageId.builder().channelMessageId(sendMessageResponse.getData().getIdentifier()).build());
+                xMsg.setMessageState(XMessage.MessageState.SENT);
+        	} else {
+        		log.error("Netcore Outbound Api Error Response: "+(sendMessageResponse.getError() != null ? sendMessageResponse.getError().getMessage() : sendMessageResponse.getMessage()));
+        		xMsg.setMessageState(XMessage.MessageState.NOT_SENT);
+        	}
+        }
+        return xMsg;
+    }
     
     /**
      * Get Interactive Content object for Outbound Single Message object
@@ -494,6 +477,27 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
     	return null;
     }
 
+	/**
+	 * Replace attachment urls of a media message by netcore media ids from the registry, when enabled.
+	 * Attachments whose media could not be uploaded keep their url.
+	 * @param message
+	 * @return completes once the message is updated
+	 */
+	private Mono<Void> resolveMediaIds(SingleMessage message) {
+		if (!mediaRegistry.isEnabled() || message == null || message.getMediaContent() == null) {
+			return Mono.empty();
+		}
+		return Flux.fromArray(message.getMediaContent())
+				.filter(mediaContent -> mediaContent.getAttachments() != null)
+				.flatMapIterable(mediaContent -> Arrays.asList(mediaContent.getAttachments()))
+				.flatMap(attachment -> mediaRegistry.getMediaId(attachment.getAttachment_url())
+						.doOnNext(id -> {
+							attachment.setAttachment_id(id);
+							attachment.setAttachment_url(null);
+						}))
+				.then();
+	}
+
 	/**
 	 * Get Media Content object for Outbound Single Message object
 	 * @param xMsg
@@ -558,12 +562,8 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
 		String text = "";
 
 	    if (xMsg.getMessageType() != null && xMsg.getMessageType().equals(XMessage.MessageType.HSM)) {
-	    	// OPT in user
-	    	optInUser(phoneNo);
 	    	text = xMsg.getPayload().getText() + renderMessageChoices(xMsg.getPayload().getButtonChoices());
 	    } else if (xMsg.getMessageType() != null && xMsg.getMessageType().equals(XMessage.MessageType.HSM_WITH_BUTTON)) {
-	    	// OPT in user
-	    	optInUser(phoneNo);
 	    	text = xMsg.getPayload().getText()+ renderMessageChoices(xMsg.getPayload().getButtonChoices());
 	    } else if (xMsg.getMessageState().equals(XMessage.MessageState.REPLIED)) {
 	    	text = xMsg.getPayload().getText()+ renderMessageChoices(xMsg.getPayload().getButtonChoices());
@@ -591,53 +591,39 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
     }
     
     /**
-     * Opt in a user
+     * Opt in a user, batched with other consent requests
      * @param phoneNo
      */
-    private void optInUser(String phoneNo) {
-    	SingleOptInOutMessage message = SingleOptInOutMessage
-									        .builder()
-									        .from("WEB")
-									        .to(phoneNo)
-									        .build();
-    	
-    	optInOutUser("optin", message);
+    private Mono<Boolean> optInUser(String phoneNo) {
+    	return consentBatcher.optIn(phoneNo);
     }
     
     /**
-     * Opt out a user
+     * Opt out a user, batched with other consent requests
      * @param phoneNo
      */
-    private void optOutUser(String phoneNo) {
-    	SingleOptInOutMessage message = SingleOptInOutMessage
-									        .builder()
-									        .from("WEB")
-									        .to(phoneNo)
-									        .build();
-    	optInOutUser("optout", message);
+    private Mono<Boolean> optOutUser(String phoneNo) {
+    	return consentBatcher.optOut(phoneNo);
     }
-    
+
     /**
-     * Opt in/out a user
-     * @param type
-     * @param message
+     * Opt in the recipient of a HSM text message before it is sent, the message is sent even if the opt in fails
+     * @param xMsg
+     * @param message outbound message built for the xmessage
+     * @return completes once the opt in is done
      */
-    private void optInOutUser(String type, SingleOptInOutMessage message) {
-        newNetcoreService.
-                sendOutboundOptInOutMessage(OutboundOptInOutMessage.builder().type(type).recipients(new SingleOptInOutMessage[]{message}).build()).map(new Function<SendMessageResponse, Boolean>() {
-            @Override
-            public Boolean apply(SendMessageResponse sendMessageResponse) {
-                if(sendMessageResponse != null){
-                	if(sendMessageResponse.getStatus().equals("success")) {
-                		log.info("Netcore Outbound Api - Opt IN/OUT Success Response.");
-                		return true;
-                	} else {
-                		log.error("Netcore Outbound Api - Opt IN/OUT Error Response: "+sendMessageResponse.getError().getMessage());
-                	}
-                }
-                return false;
-            }
-        }).subscribe();
+    private Mono<Void> optInIfHsm(XMessage xMsg, SingleMessage message) {
+    	if (message == null || !MessageType.TEXT.toString().equals(message.getMessageType()) || xMsg.getMessageType() == null
+    			|| !(xMsg.getMessageType().equals(XMessage.MessageType.HSM) || xMsg.getMessageType().equals(XMessage.MessageType.HSM_WITH_BUTTON))) {
+    		return Mono.empty();
+    	}
+    	return optInUser(message.getTo())
+    			.doOnNext(optedIn -> {
+    				if (!optedIn) {
+    					log.error("NetcoreWhatsappAdapter:optInIfHsm::opt in failed for " + message.getTo());
+    				}
+    			})
+    			.then();
     }
 
 	/**
@@ -707,8 +693,33 @@ public class NetcoreWhatsappAdapter extends AbstractProvider implements IProvide
         return "";
     }
 
+	/**
+	 * Process outbound messages in bulk - send in multi message requests, each xmessage updated from its own response
+	 */
 	@Override
 	public Flux<XMessage> processOutBoundMessageF(Mono<List<XMessage>> xMessageList) throws Exception {
-		return null;
+		return xMessageList
+				.flatMapMany(list -> Flux.fromIterable(Lists.partition(list, outboundBatcher.getMaxBatchSize())))
+				.flatMap(chunk -> {
+					SingleMessage[] messages = chunk.stream()
+							.map(xMsg -> getOutboundSingleMessage(xMsg, "91" + xMsg.getTo().getUserID()))
+							.toArray(SingleMessage[]::new);
+					return Flux.range(0, messages.length)
+							.flatMap(i -> optInIfHsm(chunk.get(i), messages[i]).then(resolveMediaIds(messages[i])))
+							.then(Mono.defer(() -> newNetcoreService.sendOutboundMessageBatch(OutboundMessage.builder().message(messages).build())))
+							.map(responses -> {
+								List<XMessage> result = new ArrayList<>(chunk.size());
+								for (int i = 0; i < chunk.size(); i++) {
+									result.add(applySendResponse(chunk.get(i), responses.get(i)));
+								}
+								return result;
+							})
+							.onErrorResume(e -> {
+								log.error("NetcoreWhatsappAdapter:processOutBoundMessageF::Exception: " + e.getMessage());
+								chunk.forEach(xMsg -> xMsg.setMessageState(XMessage.MessageState.NOT_SENT));
+								return Mono.just(chunk);
+							});
+				}, outboundBatcher.getMaxInFlight())
+				.flatMapIterable(result -> result);
 	}
 }
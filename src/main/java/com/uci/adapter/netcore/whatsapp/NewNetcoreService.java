@@ -3,30 +3,47 @@ package com.uci.adapter.netcore.whatsapp;
 import com.azure.core.util.BinaryData;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.uci.adapter.netcore.whatsapp.outbound.ManageUserRequestMessage;
 import com.uci.adapter.netcore.whatsapp.outbound.ManageUserResponse;
 import com.uci.adapter.netcore.whatsapp.outbound.OutboundMessage;
 import com.uci.adapter.netcore.whatsapp.outbound.OutboundOptInOutMessage;
 import com.uci.adapter.netcore.whatsapp.outbound.SendMessageResponse;
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import com.uci.adapter.media.MediaDownload;
+import com.uci.adapter.utils.JsonCodecs;
+import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+@Slf4j
 @Service
 public class NewNetcoreService {
+    private static final ObjectWriter MANAGE_USER_WRITER = JsonCodecs.writerFor(ManageUserRequestMessage.class);
+    private static final ObjectWriter MESSAGE_WRITER = JsonCodecs.writerFor(OutboundMessage.class);
+    private static final ObjectWriter OPT_IN_OUT_WRITER = JsonCodecs.writerFor(OutboundOptInOutMessage.class);
+    private static final ObjectReader MANAGE_USER_READER = JsonCodecs.readerFor(ManageUserResponse.class);
+    private static final ObjectReader SEND_RESPONSE_READER = JsonCodecs.readerFor(SendMessageResponse.class);
+    private static final ObjectReader NODE_READER = JsonCodecs.readerFor(JsonNode.class);
 
-    private final WebClient webClient;
+    private WebClient webClient;
 
 	@Autowired
     private OkHttpClient client;
@@ -42,18 +59,31 @@ public class NewNetcoreService {
         url = url != null && !url.isEmpty() ? url : "https://waapi.pepipost.com/api/v2/";
         this.baseURL = url;
         this.credentials = new NWCredentials(System.getenv("NETCORE_WHATSAPP_AUTH_TOKEN"));
-        webClient = WebClient.builder()
-                .baseUrl(url)
+        this.webClient = buildWebClient(WebClient.builder());
+    }
+
+    /**
+     * Send over the pooled netcore web client, set by spring. Setter injected so the no-arg constructor
+     * stays the only one.
+     * @param httpClientFactory
+     */
+    @Autowired
+    public void setHttpClientFactory(VendorHttpClientFactory httpClientFactory) {
+        this.webClient = buildWebClient(httpClientFactory.getWebClient(HttpVendor.netcore).mutate());
+    }
+
+    private WebClient buildWebClient(WebClient.Builder webClientBuilder) {
+        return webClientBuilder
+                .baseUrl(baseURL)
                 .defaultHeader("Content-Type", "application/json")
                 .defaultHeader("Authorization", "Bearer " + credentials.getToken())
                 .build();
     }
 
     public ManageUserResponse manageUser(ManageUserRequestMessage message) {
-        ObjectMapper mapper = new ObjectMapper();
         RequestBody body = null;
         try {
-            body = RequestBody.create(mediaType, mapper.writeValueAsString(message));
+            body = RequestBody.create(mediaType, MANAGE_USER_WRITER.writeValueAsString(message));
             Request request = new Request.Builder()
                     .url(baseURL + "consent/manage")
                     .method("POST", body)
@@ -62,7 +92,7 @@ public class NewNetcoreService {
                     .build();
             Response response = client.newCall(request).execute();
             String json = response.body().toString();
-            return mapper.readValue(json, ManageUserResponse.class);
+            return MANAGE_USER_READER.readValue(json);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
             return null;
@@ -75,10 +105,9 @@ public class NewNetcoreService {
     }
 
     public SendMessageResponse sendText(OutboundMessage message) {
-        ObjectMapper mapper = new ObjectMapper();
         RequestBody body = null;
         try {
-            body = RequestBody.create(mediaType, mapper.writeValueAsString(message));
+            body = RequestBody.create(mediaType, MESSAGE_WRITER.writeValueAsString(message));
             Request request = new Request.Builder()
                     .url(baseURL + "message/")
                     .method("POST", body)
@@ -87,7 +116,7 @@ public class NewNetcoreService {
                     .build();
             Response response = client.newCall(request).execute();
             String json = response.body().string();
-            return mapper.readValue(json, SendMessageResponse.class);
+            return SEND_RESPONSE_READER.readValue(json);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
             return null;
@@ -100,28 +129,21 @@ public class NewNetcoreService {
     }
 
     public Mono<SendMessageResponse> sendOutboundMessage(OutboundMessage outboundMessage) {
-    	ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-    	try {
-			String json = ow.writeValueAsString(outboundMessage);
-			System.out.println("json:"+json);
-		} catch (JsonProcessingException e) {
-			System.out.println("json not converted:"+e.getMessage());
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+    	logJson(outboundMessage);
     	
         return webClient.post()
                 .uri("/message/")
-                .body(Mono.just(outboundMessage), OutboundMessage.class)
+                .body(JsonCodecs.encode(MESSAGE_WRITER, outboundMessage), byte[].class)
                 .retrieve()
-                .bodyToMono(SendMessageResponse.class)
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<SendMessageResponse>decode(SEND_RESPONSE_READER, body))
                 .map(new Function<SendMessageResponse, SendMessageResponse>() {
                     @Override
                     public SendMessageResponse apply(SendMessageResponse sendMessageResponse) {
                         if (sendMessageResponse != null) {
-                            System.out.println("MESSAGE RESPONSE " + sendMessageResponse.getMessage());
-                            System.out.println("STATUS RESPONSE " + sendMessageResponse.getStatus());
-                            System.out.println("DATA RESPONSE " + sendMessageResponse.getData());
+                            log.debug("MESSAGE RESPONSE " + sendMessageResponse.getMessage());
+                            log.debug("STATUS RESPONSE " + sendMessageResponse.getStatus());
+                            log.debug("DATA RESPONSE " + sendMessageResponse.getData());
                             return sendMessageResponse;
                         } else {
                             return null;
@@ -130,77 +152,221 @@ public class NewNetcoreService {
                 }).doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(Throwable throwable) {
-                        System.out.println("ERROR IS " + throwable.getLocalizedMessage());
+                        log.error("ERROR IS " + throwable.getLocalizedMessage());
                     }
                 });
     }
     
+    /**
+     * Log a request body, serialized only when debug logging is on
+     * @param message
+     */
+    private void logJson(Object message) {
+        if (log.isDebugEnabled()) {
+            try {
+                log.debug("json:" + JsonCodecs.prettyWriter().writeValueAsString(message));
+            } catch (JsonProcessingException e) {
+                log.debug("json not converted:" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Send many messages in one request
+     * @param outboundMessage
+     * @return response per message, in the order of messages
+     */
+    public Mono<List<SendMessageResponse>> sendOutboundMessageBatch(OutboundMessage outboundMessage) {
+        int count = outboundMessage.getMessage().length;
+        return webClient.post()
+                .uri("/message/")
+                .body(JsonCodecs.encode(MESSAGE_WRITER, outboundMessage), byte[].class)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<JsonNode>decode(NODE_READER, body))
+                .map(node -> toSendMessageResponses(node, count))
+                .doOnError(throwable -> log.error("NewNetcoreService:sendOutboundMessageBatch::Exception: " + throwable.getMessage()));
+    }
+
+    /**
+     * Send opt in/out of many recipients in one request
+     * @param outboundMessage
+     * @return response per recipient, in the order of recipients
+     */
+    public Mono<List<SendMessageResponse>> sendOutboundOptInOutMessageBatch(OutboundOptInOutMessage outboundMessage) {
+        int count = outboundMessage.getRecipients().length;
+        return webClient.post()
+                .uri("/consent/manage")
+                .body(JsonCodecs.encode(OPT_IN_OUT_WRITER, outboundMessage), byte[].class)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<JsonNode>decode(NODE_READER, body))
+                .map(node -> toSendMessageResponses(node, count))
+                .doOnError(throwable -> log.error("NewNetcoreService:sendOutboundOptInOutMessageBatch::Exception: " + throwable.getMessage()));
+    }
+
+    /**
+     * Split a multi item response by the position of items in its data array. The whole response is the
+     * response of a single item, items of a multi item request without an element of their own are unconfirmed:
+     * they get no status & a missing response error.
+     * @param node whole response
+     * @param count items in the request
+     * @return
+     */
+    private List<SendMessageResponse> toSendMessageResponses(JsonNode node, int count) {
+        JsonNode data = node.path("data");
+        List<SendMessageResponse> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (count == 1) {
+                responses.add(toSendMessageResponse(node, data.isArray() ? data.path(0) : data));
+            } else if (data.isArray() && data.has(i)) {
+                responses.add(toSendMessageResponse(node, data.get(i)));
+            } else {
+                responses.add(toMissingResponse(node));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Build response of an item that has no element in a multi item response
+     * @param node whole response
+     * @return
+     */
+    private SendMessageResponse toMissingResponse(JsonNode node) {
+        SendMessageResponse response = new SendMessageResponse();
+        response.setMessage(node.path("message").asText(null));
+        SendMessageResponse.Error responseError = response.new Error();
+        responseError.setCode("missing_response");
+        responseError.setMessage("No response for this item, response status: " + node.path("status").asText(null));
+        response.setError(responseError);
+        return response;
+    }
+
+    /**
+     * Build response of a single message from a batch response
+     * @param node whole response
+     * @param element data element of the message, null if not present
+     * @return
+     */
+    private SendMessageResponse toSendMessageResponse(JsonNode node, JsonNode element) {
+        SendMessageResponse response = new SendMessageResponse();
+        response.setStatus(node.path("status").asText(null));
+        response.setMessage(node.path("message").asText(null));
+        if (element != null && !element.isMissingNode()) {
+            JsonNode id = element.has("id") ? element.get("id") : element.get("identifier");
+            SendMessageResponse.Data data = response.new Data();
+            data.setIdentifier(id != null ? id.asText() : null);
+            response.setData(data);
+            if (element.has("status")) {
+                response.setStatus(element.get("status").asText());
+            }
+        }
+        JsonNode error = element != null && element.has("error") ? element.get("error") : node.get("error");
+        if (error != null && !error.isNull()) {
+            SendMessageResponse.Error responseError = response.new Error();
+            responseError.setCode(error.path("code").asText(null));
+            responseError.setMessage(error.path("message").asText(null));
+            response.setError(responseError);
+        }
+        return response;
+    }
+
     public Mono<SendMessageResponse> sendOutboundOptInOutMessage(OutboundOptInOutMessage outboundMessage) {
-    	ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-    	try {
-			String json = ow.writeValueAsString(outboundMessage);
-			System.out.println("json:"+json);
-		} catch (JsonProcessingException e) {
-			System.out.println("json not converted:"+e.getMessage());
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+    	logJson(outboundMessage);
     	
         return webClient.post()
                 .uri("/consent/manage")
-                .body(Mono.just(outboundMessage), OutboundOptInOutMessage.class)
+                .body(JsonCodecs.encode(OPT_IN_OUT_WRITER, outboundMessage), byte[].class)
                 .retrieve()
-                .bodyToMono(SendMessageResponse.class)
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<SendMessageResponse>decode(SEND_RESPONSE_READER, body))
                 .map(new Function<SendMessageResponse, SendMessageResponse>() {
                     @Override
                     public SendMessageResponse apply(SendMessageResponse sendMessageResponse) {
                         if (sendMessageResponse != null) {
-                            System.out.println("sendOutboundOptInOutMessage MESSAGE RESPONSE " + sendMessageResponse.getMessage());
-                            System.out.println("sendOutboundOptInOutMessage STATUS RESPONSE " + sendMessageResponse.getStatus());
-                            System.out.println("sendOutboundOptInOutMessage DATA RESPONSE " + sendMessageResponse.getData());
+                            log.debug("sendOutboundOptInOutMessage MESSAGE RESPONSE " + sendMessageResponse.getMessage());
+                            log.debug("sendOutboundOptInOutMessage STATUS RESPONSE " + sendMessageResponse.getStatus());
+                            log.debug("sendOutboundOptInOutMessage DATA RESPONSE " + sendMessageResponse.getData());
                             return sendMessageResponse;
                         } else {
-                        	System.out.println("sendOutboundOptInOutMessage response is null.");
+                        	log.debug("sendOutboundOptInOutMessage response is null.");
                             return null;
                         }
                     }
                 }).doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(Throwable throwable) {
-                        System.out.println("ERROR IS " + throwable.getLocalizedMessage());
+                        log.error("ERROR IS " + throwable.getLocalizedMessage());
                     }
                 });
     }
     
     /**
-     * Get Media File from netcore by id
+     * Upload media to netcore, to be sent by its media id
+     * @param content media bytes, streamed into the request
+     * @param fileName
+     * @param contentType
+     * @return netcore media id, empty if the upload was not successful
+     */
+    public Mono<String> uploadMedia(Flux<DataBuffer> content, String fileName, org.springframework.http.MediaType contentType) {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.asyncPart("file", content, DataBuffer.class)
+                .filename(fileName)
+                .contentType(contentType);
+        return webClient.post()
+                .uri("/media/")
+                .contentType(org.springframework.http.MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<JsonNode>decode(NODE_READER, body))
+                .flatMap(node -> Mono.justOrEmpty(getUploadedMediaId(node)))
+                .doOnError(throwable -> log.error("NewNetcoreService:uploadMedia::Exception: " + throwable.getMessage()));
+    }
+
+    /**
+     * Get the media id of a media upload response, {"status":"success","data":{"id":"..."}}
+     * @param node
+     * @return media id, null if the upload was not successful
+     */
+    static String getUploadedMediaId(JsonNode node) {
+        String id = node.path("data").path("id").asText(null);
+        if (!"success".equals(node.path("status").asText(null)) || id == null || id.isEmpty()) {
+            log.error("NewNetcoreService:uploadMedia::No media id in response: " + node);
+            return null;
+        }
+        return id;
+    }
+
+    /**
+     * Open a media download by id, the caller must close it
      * @param id
-     * @return
+     * @return download with the declared size, null if the media could not be fetched or is empty
      */
-    public InputStream getMediaFile(String id) {
-    	ObjectMapper mapper = new ObjectMapper();
+    public MediaDownload getMedia(String id) {
+        Response response = null;
         try {
             Request request = new Request.Builder()
                     .url(baseURL + "media/"+id)
                     .get()
                     .addHeader("Authorization", "Bearer " + credentials.getToken())
                     .build();
-            
-            Response response = client.newCall(request).execute();
 
+            response = client.newCall(request).execute();
             ResponseBody body = response.body();
-            
-            InputStream in = body.byteStream();
-            
-            if(body.contentLength() <= 0) {
-            	System.out.println("Media file content length is 0");
-            	return null;
+            /* -1 is an unknown length, e.g. a chunked response */
+            if(!response.isSuccessful() || body == null || body.contentLength() == 0) {
+                log.error("NewNetcoreService:getMedia::Media file empty or not found, status: " + response.code());
+                response.close();
+                return null;
+            }
+            return new MediaDownload(body.byteStream(), body.contentLength(), response);
+        } catch (Exception e) {
+            log.error("NewNetcoreService:getMedia::Exception in netcore getMedia: " + e.getMessage());
+            if (response != null) {
+                response.close();
             }
-            
-            return in;
-        } catch (Exception e ) {
-        	System.out.println("Exception in netcore getMediaFile: "+e.getMessage());
-            e.printStackTrace();
             return null;
         }
     }
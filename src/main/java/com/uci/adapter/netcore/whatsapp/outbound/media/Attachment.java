@@ -1,6 +1,8 @@
 package com.uci.adapter.netcore.whatsapp.outbound.media;
 
 import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -9,7 +11,14 @@ import lombok.Setter;
 @Setter
 @Builder
 public class Attachment {
+	/* Either the url or the netcore media id of uploaded media is sent */
+	@Nullable
+	@JsonInclude(JsonInclude.Include.NON_NULL)
 	private String attachment_url;
+
+	@Nullable
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private String attachment_id;
 	
 	private String attachment_type;
 	
@@ -1,8 +1,16 @@
 package com.uci.adapter.provider.factory;
 
+import com.uci.adapter.Enums.ChannelType;
+import com.uci.adapter.Enums.ProviderType;
+import com.uci.adapter.cache.AdapterCredentialCache;
+import com.uci.adapter.cache.RedisPipelinedWriter;
 import com.uci.adapter.cdn.FileCdnFactory;
+import com.uci.adapter.firebase.web.FirebaseMessagingCache;
 import com.uci.adapter.firebase.web.FirebaseNotificationAdapter;
+import com.uci.adapter.firebase.web.FirebaseNotificationService;
 import com.uci.adapter.gs.whatsapp.GupShupWhatsappAdapter;
+import com.uci.adapter.media.MediaUploader;
+import com.uci.adapter.gs.whatsapp.GupshupOptInStore;
 import com.uci.adapter.netcore.whatsapp.NetcoreWhatsappAdapter;
 import com.uci.adapter.pwa.PwaWebPortalAdapter;
 import com.uci.adapter.sunbird.web.SunbirdWebPortalAdapter;
@@ -11,11 +19,17 @@ import com.uci.dao.repository.XMessageRepository;
 import com.uci.utils.BotService;
 
 import com.uci.utils.cache.service.RedisCacheService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Slf4j
 @Component
 public class ProviderFactory {
 
@@ -48,42 +62,102 @@ public class ProviderFactory {
     @Value("${fcm.androidconfig.ttl:#{36000}}")
     private long fcmAndgoidConfigTTl;
 
+    @Value("${fcm.bulk.chunkSize:#{500}}")
+    private int fcmBulkChunkSize;
+
+    @Value("${fcm.bulk.maxConcurrency:#{4}}")
+    private int fcmBulkMaxConcurrency;
+
+    @Value("${fcm.bulk.correlationTimeoutMs:#{10000}}")
+    private long fcmCorrelationTimeoutMs;
+
     @Autowired
     private RedisCacheService redisCacheService;
 
-    public IProvider getProvider(String provider, String channel) {
-        if (provider.toLowerCase().equals("gupshup") && channel.toLowerCase().equals("whatsapp")) {
-            GupShupWhatsappAdapter gupshupWhatsapp = GupShupWhatsappAdapter
-                    .builder()
-                    .botservice(botService)
-                    .fileCdnProvider(fileCdnFactory.getFileCdnProvider())
-                    .xmsgRepo(xmsgRepo)
-                    .build();
-            return gupshupWhatsapp;
-        } else if (provider.equals("gupshup") && channel.equals("sms")) {
-            return gupshupSMS;
-        } else if (provider.equals("cdac") && channel.toLowerCase().equals("sms")) {
-            return cdacSMSBulk;
-        } else if (provider.equals("sunbird") && channel.toLowerCase().equals("web")) {
-            SunbirdWebPortalAdapter sunbirdAdapter = SunbirdWebPortalAdapter.builder().build();
-            return sunbirdAdapter;
-        } else if (provider.equals("pwa") && channel.toLowerCase().equals("web")) {
-            PwaWebPortalAdapter pwaAdapter = PwaWebPortalAdapter.builder()
-                    .commonUtils(commonUtils)
-                    .fileCdnProvider(fileCdnFactory.getFileCdnProvider())
-                    .build();
-            return pwaAdapter;
-        } else if (provider.equalsIgnoreCase("Netcore") && channel.toLowerCase().equalsIgnoreCase("whatsapp")) {
-            netcoreWhatsappAdapter.setBotservice(botService);
-            netcoreWhatsappAdapter.setFileCdnProvider(fileCdnFactory.getFileCdnProvider());
-            return netcoreWhatsappAdapter;
-        } else if (provider.toLowerCase().equals("firebase") && channel.toLowerCase().equals("web")) {
-            return FirebaseNotificationAdapter.builder().botService(botService).notificationKeyEnable(notificationKeyEnable).fcmAndroidConfigTTl(fcmAndgoidConfigTTl)
-                    .redisCacheService(redisCacheService)
-                    .build();
+    @Autowired
+    private AdapterCredentialCache credentialCache;
+
+    @Autowired
+    private GupshupOptInStore gupshupOptInStore;
+
+    @Autowired
+    private FirebaseMessagingCache firebaseMessagingCache;
 
+    @Autowired
+    private FirebaseNotificationService firebaseNotificationService;
+
+    @Autowired
+    private RedisPipelinedWriter redisPipelinedWriter;
+
+    @Autowired
+    private MediaUploader mediaUploader;
+
+    /**
+     * Provider instances by provider & channel, built once at startup.
+     * Replaced as a whole on registration so lookups never need locking.
+     */
+    private volatile Map<ProviderType, Map<ChannelType, IProvider>> registry = new EnumMap<>(ProviderType.class);
+
+    @PostConstruct
+    public void init() {
+        register(ProviderType.gupshup, ChannelType.whatsapp, GupShupWhatsappAdapter
+                .builder()
+                .botservice(botService)
+                .fileCdnProvider(fileCdnFactory.getFileCdnProvider())
+                .xmsgRepo(xmsgRepo)
+                .credentialCache(credentialCache)
+                .optInStore(gupshupOptInStore)
+                .mediaUploader(mediaUploader)
+                .build());
+        register(ProviderType.gupshup, ChannelType.sms, gupshupSMS);
+        register(ProviderType.cdac, ChannelType.sms, cdacSMSBulk);
+        register(ProviderType.sunbird, ChannelType.web, SunbirdWebPortalAdapter.builder().build());
+        register(ProviderType.pwa, ChannelType.web, PwaWebPortalAdapter.builder()
+                .commonUtils(commonUtils)
+                .fileCdnProvider(fileCdnFactory.getFileCdnProvider())
+                .build());
+
+        netcoreWhatsappAdapter.setBotservice(botService);
+        netcoreWhatsappAdapter.setFileCdnProvider(fileCdnFactory.getFileCdnProvider());
+        register(ProviderType.netcore, ChannelType.whatsapp, netcoreWhatsappAdapter);
+
+        register(ProviderType.firebase, ChannelType.web, FirebaseNotificationAdapter.builder()
+                .botService(botService)
+                .notificationKeyEnable(notificationKeyEnable)
+                .fcmAndroidConfigTTl(fcmAndgoidConfigTTl)
+                .redisCacheService(redisCacheService)
+                .credentialCache(credentialCache)
+                .firebaseMessagingCache(firebaseMessagingCache)
+                .firebaseNotificationService(firebaseNotificationService)
+                .correlationWriter(redisPipelinedWriter)
+                .bulkChunkSize(fcmBulkChunkSize)
+                .bulkMaxConcurrency(fcmBulkMaxConcurrency)
+                .correlationTimeoutMs(fcmCorrelationTimeoutMs)
+                .build());
+    }
+
+    /**
+     * Register a provider for a provider/channel pair, replacing any existing one
+     * @param provider
+     * @param channel
+     * @param adapter
+     */
+    public synchronized void register(ProviderType provider, ChannelType channel, IProvider adapter) {
+        Map<ProviderType, Map<ChannelType, IProvider>> updated = new EnumMap<>(ProviderType.class);
+        registry.forEach((key, channels) -> updated.put(key, new EnumMap<>(channels)));
+        updated.computeIfAbsent(provider, k -> new EnumMap<>(ChannelType.class)).put(channel, adapter);
+        registry = updated;
+        log.info("ProviderFactory:register:: provider: " + provider + ", channel: " + channel + ", adapter: " + adapter.getClass().getSimpleName());
+    }
+
+    public IProvider getProvider(String provider, String channel) {
+        ProviderType providerType = ProviderType.of(provider);
+        ChannelType channelType = ChannelType.of(channel);
+        if (providerType == null || channelType == null) {
+            return null;
         }
-        return null;
+        Map<ChannelType, IProvider> channels = registry.get(providerType);
+        return channels != null ? channels.get(channelType) : null;
     }
 
 }
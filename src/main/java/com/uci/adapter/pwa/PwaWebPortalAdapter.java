@@ -1,8 +1,6 @@
 package com.uci.adapter.pwa;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import com.uci.adapter.cdn.FileCdnProvider;
 import com.uci.adapter.provider.factory.AbstractProvider;
 import com.uci.adapter.provider.factory.IProvider;
@@ -12,6 +10,7 @@ import com.uci.adapter.pwa.web.outbound.OutboundMessage;
 import com.uci.adapter.pwa.web.outbound.PwaMessage;
 import com.uci.adapter.pwa.web.outbound.PwaWebResponse;
 import com.uci.adapter.utils.CommonUtils;
+import com.uci.adapter.utils.JsonCodecs;
 import com.uci.utils.bot.util.FileUtil;
 import lombok.Builder;
 import lombok.Getter;
@@ -103,14 +102,12 @@ public class PwaWebPortalAdapter extends AbstractProvider implements IProvider {
             log.info("Sending final xmessage to transport socket :: " + xMsg.toXML());
 
             String url = System.getenv("PWA_TRANSPORT_SOCKET_BASE_URL") + "/botMsg/adapterOutbound";
-            ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-            try {
-                String json = ow.writeValueAsString(outboundMessage);
-                System.out.println("json:" + json);
-            } catch (JsonProcessingException e) {
-                System.out.println("json not converted:" + e.getMessage());
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+            if (log.isDebugEnabled()) {
+                try {
+                    log.debug("json:" + JsonCodecs.prettyWriter().writeValueAsString(outboundMessage));
+                } catch (JsonProcessingException e) {
+                    log.debug("json not converted:" + e.getMessage());
+                }
             }
 
             //        xMsg.setMessageId(MessageId.builder().channelMessageId("test").build());
@@ -145,7 +142,7 @@ public class PwaWebPortalAdapter extends AbstractProvider implements IProvider {
     public XMessage callOutBoundAPI(XMessage xMsg) throws Exception{
         OutboundMessage outboundMessage = getOutboundMessage(xMsg);
         String url = System.getenv("PWA_TRANSPORT_SOCKET_BASE_URL")+"/adapterOutbound";
-        PwaWebService webService = new PwaWebService();
+        PwaWebService webService = PwaWebService.getInstance();
         PwaWebResponse response = webService.sendText(url, outboundMessage);
         if(null != response){
             xMsg.setMessageId(MessageId.builder().channelMessageId(outboundMessage.getMessageId()).build());
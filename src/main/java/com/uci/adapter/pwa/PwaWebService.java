@@ -1,59 +1,75 @@
 package com.uci.adapter.pwa;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.uci.adapter.pwa.web.outbound.PwaWebResponse;
 import com.uci.adapter.pwa.web.outbound.OutboundMessage;
 
-import okhttp3.*;
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import com.uci.adapter.utils.JsonCodecs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
-import java.io.IOException;
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+@Slf4j
+@Service
 public class PwaWebService {
-    private OkHttpClient client;
-    private MediaType mediaType;
+    private static final Duration SEND_TEXT_TIMEOUT = Duration.ofSeconds(60);
+    private static final ObjectWriter MESSAGE_WRITER = JsonCodecs.writerFor(OutboundMessage.class);
+    private static final ObjectReader RESPONSE_READER = JsonCodecs.readerFor(PwaWebResponse.class);
+
     private final WebClient webClient;
 
-    private static PwaWebService webService = null;
-    
+    private static volatile PwaWebService webService = null;
+
     public PwaWebService(){
-        this.client = new OkHttpClient().newBuilder().build();
-        this.mediaType = MediaType.parse("application/json");
         this.webClient = WebClient.builder().build();
     }
 
+    @Autowired
+    public PwaWebService(VendorHttpClientFactory httpClientFactory) {
+        this.webClient = httpClientFactory.getWebClient(HttpVendor.transport);
+    }
+
+    /**
+     * Share the pooled spring managed instance with getInstance() callers
+     */
+    @PostConstruct
+    public void registerInstance() {
+        webService = this;
+    }
+
     public static PwaWebService getInstance() {
         if (webService == null) {
-            return new PwaWebService();
-        } else {
-            return webService;
+            synchronized (PwaWebService.class) {
+                if (webService == null) {
+                    webService = new PwaWebService();
+                }
+            }
         }
+        return webService;
     }
 
+    /**
+     * Send a message & wait for the response, over the pooled transport client
+     * @param url
+     * @param message
+     * @return response, null if the request failed
+     */
     public PwaWebResponse sendText(String url, OutboundMessage message){
-        ObjectMapper mapper = new ObjectMapper();
-        RequestBody body = null;
         try {
-            body = RequestBody.create(mediaType,  mapper.writeValueAsString(message));
-            Request request = new Request.Builder()
-                    .url(url )
-                    .method("POST", body)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-            Response response = client.newCall(request).execute();
-            String json = response.body().string();
-            return mapper.readValue(json, PwaWebResponse.class);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return null;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        } catch (Exception e){
+            return sendOutboundMessage(url, message).block(SEND_TEXT_TIMEOUT);
+        } catch (Exception e) {
+            log.error("PwaWebService:sendText::Exception: " + e.getMessage());
             return null;
         }
     }
@@ -62,16 +78,18 @@ public class PwaWebService {
     public Mono<PwaWebResponse> sendOutboundMessage(String url, OutboundMessage outboundMessage) {
         return webClient.post()
                 .uri(url)
-                .body(Mono.just(outboundMessage), OutboundMessage.class)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(JsonCodecs.encode(MESSAGE_WRITER, outboundMessage), byte[].class)
                 .retrieve()
-                .bodyToMono(PwaWebResponse.class)
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<PwaWebResponse>decode(RESPONSE_READER, body))
                 .map(new Function<PwaWebResponse, PwaWebResponse>() {
                     @Override
                     public PwaWebResponse apply(PwaWebResponse pwaWebResponse) {
                         if (pwaWebResponse != null) {
-                            System.out.println("MESSAGE RESPONSE " + pwaWebResponse.getMessage());
-                            System.out.println("STATUS RESPONSE " + pwaWebResponse.getStatus());
-                            System.out.println("MESSAGE ID RESPONSE " + pwaWebResponse.getId());
+                            log.debug("MESSAGE RESPONSE " + pwaWebResponse.getMessage());
+                            log.debug("STATUS RESPONSE " + pwaWebResponse.getStatus());
+                            log.debug("MESSAGE ID RESPONSE " + pwaWebResponse.getId());
                             return pwaWebResponse;
                         } else {
                             return null;
@@ -80,7 +98,7 @@ public class PwaWebService {
                 }).doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(Throwable throwable) {
-                        System.out.println("ERROR IS " + throwable.getLocalizedMessage());
+                        log.error("ERROR IS " + throwable.getLocalizedMessage());
                     }
                 });
     }
@@ -108,7 +108,7 @@ public class SunbirdWebPortalAdapter extends AbstractProvider implements IProvid
         //Get the Sunbird Outbound Url for message push
         // String url = PropertiesCache.getInstance().getProperty("SUNBIRD_OUTBOUND");
         String url = System.getenv("TRANSPORT_SOCKET_BASE_URL")+"/adapterOutbound";
-        SunbirdWebService webService = new SunbirdWebService();
+        SunbirdWebService webService = SunbirdWebService.getInstance();
         SunbirdWebResponse response = webService.sendText(url, outboundMessage);
         if(null != response){
             xMsg.setMessageId(MessageId.builder().channelMessageId(response.getId()).build());
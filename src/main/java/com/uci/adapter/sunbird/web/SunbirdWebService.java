@@ -1,58 +1,74 @@
 package com.uci.adapter.sunbird.web;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.uci.adapter.sunbird.web.outbound.OutboundMessage;
 import com.uci.adapter.sunbird.web.outbound.SunbirdWebResponse;
-import okhttp3.*;
+import com.uci.adapter.Enums.HttpVendor;
+import com.uci.adapter.app.config.VendorHttpClientFactory;
+import com.uci.adapter.utils.JsonCodecs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
-import java.io.IOException;
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+@Slf4j
+@Service
 public class SunbirdWebService {
-    private OkHttpClient client;
-    private MediaType mediaType;
+    private static final Duration SEND_TEXT_TIMEOUT = Duration.ofSeconds(60);
+    private static final ObjectWriter MESSAGE_WRITER = JsonCodecs.writerFor(OutboundMessage.class);
+    private static final ObjectReader RESPONSE_READER = JsonCodecs.readerFor(SunbirdWebResponse.class);
+
     private final WebClient webClient;
 
-    private static SunbirdWebService sunbirdWebService = null;
-    
+    private static volatile SunbirdWebService sunbirdWebService = null;
+
     public SunbirdWebService(){
-        this.client = new OkHttpClient().newBuilder().build();
-        this.mediaType = MediaType.parse("application/json");
         this.webClient = WebClient.builder().build();
     }
 
+    @Autowired
+    public SunbirdWebService(VendorHttpClientFactory httpClientFactory) {
+        this.webClient = httpClientFactory.getWebClient(HttpVendor.transport);
+    }
+
+    /**
+     * Share the pooled spring managed instance with getInstance() callers
+     */
+    @PostConstruct
+    public void registerInstance() {
+        sunbirdWebService = this;
+    }
+
     public static SunbirdWebService getInstance() {
         if (sunbirdWebService == null) {
-            return new SunbirdWebService();
-        } else {
-            return sunbirdWebService;
+            synchronized (SunbirdWebService.class) {
+                if (sunbirdWebService == null) {
+                    sunbirdWebService = new SunbirdWebService();
+                }
+            }
         }
+        return sunbirdWebService;
     }
 
+    /**
+     * Send a message & wait for the response, over the pooled transport client
+     * @param url
+     * @param message
+     * @return response, null if the request failed
+     */
     public SunbirdWebResponse sendText(String url, OutboundMessage message){
-        ObjectMapper mapper = new ObjectMapper();
-        RequestBody body = null;
         try {
-            body = RequestBody.create(mediaType,  mapper.writeValueAsString(message));
-            Request request = new Request.Builder()
-                    .url(url )
-                    .method("POST", body)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-            Response response = client.newCall(request).execute();
-            String json = response.body().string();
-            return mapper.readValue(json, SunbirdWebResponse.class);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return null;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        } catch (Exception e){
+            return sendOutboundMessage(url, message).block(SEND_TEXT_TIMEOUT);
+        } catch (Exception e) {
+            log.error("SunbirdWebService:sendText::Exception: " + e.getMessage());
             return null;
         }
     }
@@ -61,16 +77,18 @@ public class SunbirdWebService {
     public Mono<SunbirdWebResponse> sendOutboundMessage(String url, OutboundMessage outboundMessage) {
         return webClient.post()
                 .uri(url)
-                .body(Mono.just(outboundMessage), OutboundMessage.class)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(JsonCodecs.encode(MESSAGE_WRITER, outboundMessage), byte[].class)
                 .retrieve()
-                .bodyToMono(SunbirdWebResponse.class)
+                .bodyToMono(byte[].class)
+                .flatMap(body -> JsonCodecs.<SunbirdWebResponse>decode(RESPONSE_READER, body))
                 .map(new Function<SunbirdWebResponse, SunbirdWebResponse>() {
                     @Override
                     public SunbirdWebResponse apply(SunbirdWebResponse sunbirdWebResponse) {
                         if (sunbirdWebResponse != null) {
-                            System.out.println("MESSAGE RESPONSE " + sunbirdWebResponse.getMessage());
-                            System.out.println("STATUS RESPONSE " + sunbirdWebResponse.getStatus());
-                            System.out.println("MESSAGE ID RESPONSE " + sunbirdWebResponse.getId());
+                            log.debug("MESSAGE RESPONSE " + sunbirdWebResponse.getMessage());
+                            log.debug("STATUS RESPONSE " + sunbirdWebResponse.getStatus());
+                            log.debug("MESSAGE ID RESPONSE " + sunbirdWebResponse.getId());
                             return sunbirdWebResponse;
                         } else {
                             return null;
@@ -79,7 +97,7 @@ public class SunbirdWebService {
                 }).doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(Throwable throwable) {
-                        System.out.println("ERROR IS " + throwable.getLocalizedMessage());
+                        log.error("ERROR IS " + throwable.getLocalizedMessage());
                     }
                 });
     }
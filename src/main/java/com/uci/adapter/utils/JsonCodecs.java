@@ -0,0 +1,88 @@
+package com.uci.adapter.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import reactor.core.publisher.Mono;
+
+/**
+ * Shared jackson codecs. Building an ObjectMapper & warming its serializer caches per call is costly,
+ * so adapters & services use this mapper, and keep readers/writers for their dtos as static constants
+ * built from it - readers & writers are immutable and thread safe.
+ *
+ * Blackbird generates accessors with lambdas in place of reflection, it can be turned off
+ * with -Djson.codecs.blackbird=false.
+ */
+public final class JsonCodecs {
+
+    private static final ObjectMapper MAPPER = newMapper(
+            Boolean.parseBoolean(System.getProperty("json.codecs.blackbird", "true")));
+
+    private static final ObjectWriter PRETTY_WRITER = MAPPER.writer().withDefaultPrettyPrinter();
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * Build a mapper configured like the shared one
+     * @param blackbird register the blackbird module
+     * @return
+     */
+    public static ObjectMapper newMapper(boolean blackbird) {
+        ObjectMapper mapper = new ObjectMapper();
+        if (blackbird) {
+            mapper.registerModule(new BlackbirdModule());
+        }
+        return mapper;
+    }
+
+    /**
+     * Shared mapper, must not be reconfigured
+     * @return
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    public static ObjectReader readerFor(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    public static ObjectReader readerFor(TypeReference<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    public static ObjectWriter writerFor(Class<?> type) {
+        return MAPPER.writerFor(type);
+    }
+
+    /**
+     * Serialize a request body with a prebuilt writer, on subscription
+     * @param writer
+     * @param value
+     * @return
+     */
+    public static Mono<byte[]> encode(ObjectWriter writer, Object value) {
+        return Mono.fromCallable(() -> writer.writeValueAsBytes(value));
+    }
+
+    /**
+     * Deserialize a response body with a prebuilt reader
+     * @param reader
+     * @param body
+     * @return
+     */
+    public static <T> Mono<T> decode(ObjectReader reader, byte[] body) {
+        return Mono.fromCallable(() -> reader.readValue(body));
+    }
+
+    /**
+     * Pretty printing writer, for logging
+     * @return
+     */
+    public static ObjectWriter prettyWriter() {
+        return PRETTY_WRITER;
+    }
+}
@@ -0,0 +1,145 @@
+package com.uci.adapter.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Collects single items submitted concurrently into batches, by size or wait time whichever comes first,
+ * and completes each submitter from the result at its position in the batch call response.
+ *
+ * @param <T> item type
+ * @param <R> per item result type
+ */
+@Slf4j
+public class MicroBatcher<T, R> {
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+
+    private final String name;
+
+    private final Function<List<T>, Mono<List<R>>> batchCall;
+
+    private final Sinks.Many<Pending<T, R>> sink = Sinks.many().unicast().onBackpressureBuffer();
+
+    /* Submitted items not completed yet, failed if the pipeline ends */
+    private final Set<Pending<T, R>> outstanding = ConcurrentHashMap.newKeySet();
+
+    private final Duration timeout;
+
+    private final Disposable subscription;
+
+    /**
+     * @param name used in logs
+     * @param maxBatchSize max items per batch call
+     * @param maxWait max time an item waits for its batch to fill
+     * @param maxInFlight max concurrent batch calls
+     * @param batchCall sends a batch, emits one result per item in item order
+     */
+    public MicroBatcher(String name, int maxBatchSize, Duration maxWait, int maxInFlight,
+                        Function<List<T>, Mono<List<R>>> batchCall) {
+        this(name, maxBatchSize, maxWait, maxInFlight, DEFAULT_TIMEOUT, batchCall);
+    }
+
+    /**
+     * @param name used in logs
+     * @param maxBatchSize max items per batch call
+     * @param maxWait max time an item waits for its batch to fill
+     * @param maxInFlight max concurrent batch calls
+     * @param timeout max time a submitted item waits for its result, incl. waiting for its batch
+     * @param batchCall sends a batch, emits one result per item in item order
+     */
+    public MicroBatcher(String name, int maxBatchSize, Duration maxWait, int maxInFlight, Duration timeout,
+                        Function<List<T>, Mono<List<R>>> batchCall) {
+        this.name = name;
+        this.batchCall = batchCall;
+        this.timeout = timeout;
+        /* bufferTimeout is not backpressure aware, its timer fails on lack of demand when all batch calls
+         * are in flight - buffer the batches so it always has demand */
+        this.subscription = sink.asFlux()
+                .bufferTimeout(maxBatchSize, maxWait)
+                .onBackpressureBuffer()
+                .flatMap(this::execute, maxInFlight)
+                .subscribe(null,
+                        e -> {
+                            log.error("MicroBatcher:pipeline::" + name + " failed: " + e.getMessage());
+                            failOutstanding(e);
+                        },
+                        () -> failOutstanding(new IllegalStateException(name + ": batcher stopped")));
+    }
+
+    /**
+     * Submit an item to the next batch
+     * @param item
+     * @return result of this item, errors if its batch call fails
+     */
+    public Mono<R> submit(T item) {
+        return Mono.defer(() -> {
+            Pending<T, R> pending = new Pending<>(item);
+            outstanding.add(pending);
+            pending.result.whenComplete((result, e) -> outstanding.remove(pending));
+            Sinks.EmitResult emitResult;
+            while ((emitResult = sink.tryEmitNext(pending)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (emitResult.isFailure()) {
+                pending.result.completeExceptionally(new IllegalStateException(name + ": not accepting items, " + emitResult));
+            }
+            return Mono.fromFuture(pending.result).timeout(timeout);
+        });
+    }
+
+    /**
+     * Stop batching, items not yet sent are failed
+     */
+    public void dispose() {
+        sink.tryEmitComplete();
+        subscription.dispose();
+        failOutstanding(new IllegalStateException(name + ": batcher stopped"));
+    }
+
+    private void failOutstanding(Throwable e) {
+        outstanding.forEach(pending -> pending.result.completeExceptionally(e));
+    }
+
+    private Mono<Void> execute(List<Pending<T, R>> batch) {
+        List<T> items = batch.stream().map(pending -> pending.item).collect(Collectors.toList());
+        return Mono.defer(() -> batchCall.apply(items))
+                .doOnNext(results -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (i < results.size()) {
+                            batch.get(i).result.complete(results.get(i));
+                        } else {
+                            batch.get(i).result.completeExceptionally(
+                                    new IllegalStateException(name + ": no result for batch position " + i));
+                        }
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> batch.forEach(pending -> pending.result.completeExceptionally(
+                        new IllegalStateException(name + ": empty batch response")))))
+                .onErrorResume(e -> {
+                    log.error("MicroBatcher:execute::" + name + " batch of " + batch.size() + " failed: " + e.getMessage());
+                    batch.forEach(pending -> pending.result.completeExceptionally(e));
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static class Pending<T, R> {
+        private final T item;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private Pending(T item) {
+            this.item = item;
+        }
+    }
+}
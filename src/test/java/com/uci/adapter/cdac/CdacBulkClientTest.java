@@ -94,4 +94,28 @@ class CdacBulkClientTest {
 //
 //    }
 
+    @Test
+    public void testTrackDetailsParsingAndMerging() throws Exception {
+        String response1 = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><dept value=\"hpgovt-hpssa\"><msgid>290920201601346533977hpgovt-hpssa</msgid><delvSMSCount>2</delvSMSCount><fldSMSCount>0</fldSMSCount><subSMSCount>0</subSMSCount><undelv/><del><no mobNo=\"919415787824\">DELIVRED</no><no mobNo=\"919673409136\">DELIVRED</no></del><sub/><fld/></dept>";
+        String response2 = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><dept value=\"hpgovt-hpssa\"><msgid>290920201601346533978hpgovt-hpssa</msgid><delvSMSCount>1</delvSMSCount><fldSMSCount>1</fldSMSCount><subSMSCount>0</subSMSCount><undelv/><del><no mobNo=\"919415787824\">DELIVRED</no></del><sub/><fld><no mobNo=\"919673409136\">FAILED</no></fld></dept>";
+
+        TrackDetails trackSMSResponse1 = TrackDetailsParser.parse(response1);
+        TrackDetails trackSMSResponse2 = TrackDetailsParser.parse(response2);
+        assertEquals("290920201601346533977hpgovt-hpssa", trackSMSResponse1.getMessageId());
+        assertEquals(2, trackSMSResponse1.getDelivered().getPhoneNumberStatus().size());
+        assertEquals("919415787824", trackSMSResponse1.getDelivered().getPhoneNumberStatus().get(0).getMobileNumber());
+
+        List<TrackDetails> trackDetails = new ArrayList<>();
+        trackDetails.add(trackSMSResponse1);
+        trackDetails.add(null);
+        trackDetails.add(trackSMSResponse2);
+
+        TrackDetails t = CDACClient.builder().build().mergeTrackDetails(trackDetails);
+        assertEquals("3", t.getDeliveredSMSCount());
+        assertEquals("1", t.getFailedSMSCount());
+        assertEquals("0", t.getSubmittedSMSCount());
+        assertEquals(3, t.getDelivered().getPhoneNumberStatus().size());
+        assertEquals(1, t.getFailed().getPhoneNumberStatus().size());
+        assertEquals("290920201601346533977hpgovt-hpssa,290920201601346533978hpgovt-hpssa", t.getMessageId());
+    }
 }
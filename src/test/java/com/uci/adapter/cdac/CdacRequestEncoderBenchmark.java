@@ -0,0 +1,91 @@
+package com.uci.adapter.cdac;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the cdac send sms request fields the way {@link CdacService#sendUnicodeSMS} does
+ * with {@link CdacRequestEncoder}, for a 1 KB devanagari message. Network time is not included.
+ *
+ * Run the main method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CdacRequestEncoderBenchmark {
+
+    private static final String USERNAME = "dept-user";
+    private static final String PASSWORD = "dept@password";
+    private static final String SENDER_ID = "DEPTID";
+    private static final String SECURE_KEY = "0d5a4d84-4b3c-4a6f-9b1e-4d2c1e0f7a21";
+
+    private String message;
+
+    @Setup
+    public void setup() {
+        String text = "विकास आणि प्रकल्प संगणन केंद्र मध्ये स्वागत आहे ";
+        StringBuilder sb = new StringBuilder();
+        while (sb.toString().getBytes(StandardCharsets.UTF_8).length < 1024) {
+            sb.append(text);
+        }
+        message = sb.toString();
+    }
+
+    @Benchmark
+    public String[] current() throws Exception {
+        String finalmessage = "";
+        for (int i = 0; i < message.length(); i++) {
+            char ch = message.charAt(i);
+            int j = (int) ch;
+            String sss = "&#" + j + ";";
+            finalmessage = finalmessage + sss;
+        }
+        String encryptedPassword = legacySha1(PASSWORD);
+        String generatedKey = CdacService.hashGenerator(USERNAME, SENDER_ID, finalmessage, SECURE_KEY);
+        return new String[]{finalmessage, encryptedPassword, generatedKey};
+    }
+
+    @Benchmark
+    public String[] encoder() {
+        String content = CdacRequestEncoder.encodeEntities(message);
+        String encryptedPassword = CdacRequestEncoder.passwordDigest(USERNAME, PASSWORD);
+        String generatedKey = CdacRequestEncoder.requestKey(USERNAME, SENDER_ID, content, SECURE_KEY);
+        return new String[]{content, encryptedPassword, generatedKey};
+    }
+
+    /* Same steps as the private CdacService.MD5 */
+    private static String legacySha1(String text) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(text.getBytes(StandardCharsets.ISO_8859_1), 0, text.length());
+        StringBuffer buf = new StringBuffer();
+        for (byte b : md.digest()) {
+            buf.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return buf.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CdacRequestEncoderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,37 @@
+package com.uci.adapter.cdac;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CdacRequestEncoderTest {
+
+    @Test
+    public void encodesEachCharAsDecimalEntity() {
+        assertEquals("&#2357;&#2367;&#32;&#65;", CdacRequestEncoder.encodeEntities("वि A"));
+        assertEquals("", CdacRequestEncoder.encodeEntities(""));
+    }
+
+    @Test
+    public void requestKeyMatchesServiceHash() {
+        String content = CdacRequestEncoder.encodeEntities("विकास आणि प्रकल्प");
+        assertEquals(CdacService.hashGenerator("user ", "SENDER", content, " key"),
+                CdacRequestEncoder.requestKey("user ", "SENDER", content, " key"));
+    }
+
+    @Test
+    public void passwordDigestIsHexSha1AndCached() throws Exception {
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest("secret@123".getBytes(StandardCharsets.ISO_8859_1));
+        StringBuilder expected = new StringBuilder();
+        for (byte b : sha1) {
+            expected.append(String.format("%02x", b));
+        }
+        String digest = CdacRequestEncoder.passwordDigest("user", "secret@123");
+        assertEquals(expected.toString(), digest);
+        assertSame(digest, CdacRequestEncoder.passwordDigest("user", "secret@123"));
+    }
+}
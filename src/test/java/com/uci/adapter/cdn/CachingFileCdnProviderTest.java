@@ -0,0 +1,67 @@
+package com.uci.adapter.cdn;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingFileCdnProviderTest {
+
+    @Test
+    public void cachesSignedUrlsUntilUpload() {
+        CountingProvider backend = new CountingProvider(Duration.ofHours(10));
+        CachingFileCdnProvider provider = new CachingFileCdnProvider(backend, 100, Duration.ofMinutes(5));
+
+        assertEquals("url-a-1", provider.getFileSignedUrl("a"));
+        assertEquals("url-a-1", provider.getFileSignedUrl("a"));
+        assertEquals(1, backend.signed.get());
+        assertEquals(1, provider.getStats().hitCount());
+
+        provider.uploadFileFromPath("/tmp/a", "a");
+        assertEquals("url-a-2", provider.getFileSignedUrl("a"));
+    }
+
+    @Test
+    public void doesNotCacheWithoutValidityOrOnFailure() {
+        CountingProvider backend = new CountingProvider(Duration.ZERO);
+        CachingFileCdnProvider provider = new CachingFileCdnProvider(backend, 100, Duration.ofMinutes(5));
+        provider.getFileSignedUrl("a");
+        provider.getFileSignedUrl("a");
+        assertEquals(2, backend.signed.get());
+
+        CountingProvider failing = new CountingProvider(Duration.ofHours(10));
+        failing.fail = true;
+        CachingFileCdnProvider failingProvider = new CachingFileCdnProvider(failing, 100, Duration.ofMinutes(5));
+        assertEquals("", failingProvider.getFileSignedUrl("a"));
+        assertEquals("", failingProvider.getFileSignedUrl("a"));
+        assertEquals(2, failing.signed.get());
+    }
+
+    private static class CountingProvider implements FileCdnProvider {
+        private final AtomicInteger signed = new AtomicInteger();
+        private final Duration validity;
+        private boolean fail;
+
+        private CountingProvider(Duration validity) {
+            this.validity = validity;
+        }
+
+        @Override
+        public String getFileSignedUrl(String name) {
+            int count = signed.incrementAndGet();
+            return fail ? "" : "url-" + name + "-" + count;
+        }
+
+        @Override
+        public String uploadFileFromPath(String filePath, String name) {
+            return "";
+        }
+
+        @Override
+        public Duration getSignedUrlValidity() {
+            return validity;
+        }
+    }
+}
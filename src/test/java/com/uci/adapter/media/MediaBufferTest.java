@@ -0,0 +1,72 @@
+package com.uci.adapter.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaBufferTest {
+
+    @Test
+    public void keepsSmallMediaInPooledMemory() throws Exception {
+        MediaBuffer.Pool pool = new MediaBuffer.Pool(1024, 2);
+        byte[] media = randomBytes(1024);
+        Path path;
+        try (MediaBuffer buffer = MediaBuffer.readFrom(new ByteArrayInputStream(media), pool, ".png")) {
+            assertTrue(buffer.isInMemory());
+            assertEquals(1024, buffer.size());
+            assertArrayEquals(media, readAll(buffer.openStream()));
+            assertArrayEquals(media, toArray(buffer.toByteBuffer()));
+            path = buffer.toPath();
+            assertTrue(path.toString().endsWith(".png"));
+            assertArrayEquals(media, Files.readAllBytes(path));
+        }
+        assertFalse(Files.exists(path));
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void spillsLargeMediaToADeletedTempFile() throws Exception {
+        MediaBuffer.Pool pool = new MediaBuffer.Pool(1024, 2);
+        byte[] media = randomBytes(10000);
+        Path path;
+        try (MediaBuffer buffer = MediaBuffer.readFrom(new ByteArrayInputStream(media), pool, ".mp4")) {
+            assertFalse(buffer.isInMemory());
+            assertEquals(10000, buffer.size());
+            assertArrayEquals(media, readAll(buffer.openStream()));
+            assertArrayEquals(media, readAll(buffer.openStream()));
+            assertArrayEquals(media, toArray(buffer.toByteBuffer()));
+            path = buffer.toPath();
+            assertTrue(Files.exists(path));
+            assertEquals(1, pool.getPooledCount());
+        }
+        assertFalse(Files.exists(path));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] toArray(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            return stream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.uci.adapter.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SizeLimitedInputStreamTest {
+
+    @Test
+    public void readsUpToTheLimit() throws Exception {
+        SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[1024]), 1024);
+        assertEquals(1024, in.transferTo(OutputStream.nullOutputStream()));
+        assertEquals(1024, in.getCount());
+    }
+
+    @Test
+    public void failsOnceTheLimitIsCrossed() {
+        InputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[64 * 1024]), 1000);
+        MediaSizeExceededException e = assertThrows(MediaSizeExceededException.class,
+                () -> in.transferTo(OutputStream.nullOutputStream()));
+        assertEquals(1000, e.getMaxBytes());
+        assertTrue(e.getReadBytes() > 1000 && e.getReadBytes() <= 8192);
+    }
+
+    @Test
+    public void negativeLimitIsUnlimited() throws Exception {
+        SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[10000]), -1);
+        assertEquals(10000, in.transferTo(OutputStream.nullOutputStream()));
+    }
+}
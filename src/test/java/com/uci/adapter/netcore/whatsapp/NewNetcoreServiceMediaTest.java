@@ -0,0 +1,24 @@
+package com.uci.adapter.netcore.whatsapp;
+
+import com.uci.adapter.utils.JsonCodecs;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class NewNetcoreServiceMediaTest {
+
+    @Test
+    public void readsMediaIdOfUploadResponse() throws Exception {
+        String response = "{\"status\":\"success\",\"message\":\"Media uploaded successfully.\","
+                + "\"data\":{\"id\":\"e6a1c2f0-6a3b-4c55-9d7e-1b2f3c4d5e6f\"}}";
+        assertEquals("e6a1c2f0-6a3b-4c55-9d7e-1b2f3c4d5e6f",
+                NewNetcoreService.getUploadedMediaId(JsonCodecs.mapper().readTree(response)));
+    }
+
+    @Test
+    public void noMediaIdForFailedUpload() throws Exception {
+        String response = "{\"status\":\"error\",\"error\":{\"code\":\"1003\",\"message\":\"Invalid file\"}}";
+        assertNull(NewNetcoreService.getUploadedMediaId(JsonCodecs.mapper().readTree(response)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.uci.adapter.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.uci.adapter.gs.whatsapp.GSWhatsappReport;
+import com.uci.adapter.netcore.whatsapp.outbound.OutboundMessage;
+import com.uci.adapter.netcore.whatsapp.outbound.SingleMessage;
+import com.uci.adapter.netcore.whatsapp.outbound.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a new ObjectMapper per call, as the adapters used to do, with readers/writers built once
+ * from a shared mapper, with & without blackbird. Reads a gupshup delivery report & writes a netcore message.
+ *
+ * Run the main method from the test classpath, add -prof gc to the options to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecsBenchmark {
+
+    private static final TypeReference<List<GSWhatsappReport>> REPORTS = new TypeReference<List<GSWhatsappReport>>() {
+    };
+
+    private static final String REPORT = "[{\"externalId\":\"4340925846653744012-271208328592478910\","
+            + "\"eventType\":\"DELIVERED\",\"eventTs\":1637228917000,\"destAddr\":\"919999999999\","
+            + "\"srcAddr\":\"919888888888\",\"cause\":\"SUCCESS\",\"errorCode\":\"000\",\"channel\":\"WHATSAPP\"}]";
+
+    private OutboundMessage message;
+
+    private ObjectReader reportsReader;
+
+    private ObjectWriter messageWriter;
+
+    private ObjectReader blackbirdReportsReader;
+
+    private ObjectWriter blackbirdMessageWriter;
+
+    @Setup
+    public void setup() {
+        message = OutboundMessage.builder()
+                .message(new SingleMessage[]{SingleMessage.builder()
+                        .from("919888888888")
+                        .to("919999999999")
+                        .recipientType("individual")
+                        .messageType("text")
+                        .header("custom_data")
+                        .text(new Text[]{Text.builder().content("Welcome, reply 1 to continue").previewURL("false").build()})
+                        .build()})
+                .build();
+
+        ObjectMapper mapper = JsonCodecs.newMapper(false);
+        reportsReader = mapper.readerFor(REPORTS);
+        messageWriter = mapper.writerFor(OutboundMessage.class);
+
+        ObjectMapper blackbird = JsonCodecs.newMapper(true);
+        blackbirdReportsReader = blackbird.readerFor(REPORTS);
+        blackbirdMessageWriter = blackbird.writerFor(OutboundMessage.class);
+    }
+
+    @Benchmark
+    public List<GSWhatsappReport> readReportNewMapper() throws Exception {
+        return new ObjectMapper().readValue(REPORT, REPORTS);
+    }
+
+    @Benchmark
+    public List<GSWhatsappReport> readReportSharedReader() throws Exception {
+        return reportsReader.readValue(REPORT);
+    }
+
+    @Benchmark
+    public List<GSWhatsappReport> readReportBlackbird() throws Exception {
+        return blackbirdReportsReader.readValue(REPORT);
+    }
+
+    @Benchmark
+    public String writeMessageNewMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(message);
+    }
+
+    @Benchmark
+    public String writeMessageSharedWriter() throws Exception {
+        return messageWriter.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public String writeMessageBlackbird() throws Exception {
+        return blackbirdMessageWriter.writeValueAsString(message);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonCodecsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package com.uci.adapter.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MicroBatcherTest {
+
+    @Test
+    public void completesEachItemFromItsBatchPosition() {
+        List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(50), 2,
+                items -> {
+                    batches.add(new ArrayList<>(items));
+                    return Mono.just(items.stream().map(item -> "r" + item).collect(Collectors.toList()));
+                });
+
+        StepVerifier.create(Flux.range(1, 25).flatMap(i -> batcher.submit(i).map(result -> i + "=" + result)).collectList())
+                .assertNext(results -> {
+                    assertEquals(25, results.size());
+                    results.forEach(result -> {
+                        String[] parts = result.split("=");
+                        assertEquals("r" + parts[0], parts[1]);
+                    });
+                })
+                .verifyComplete();
+
+        assertEquals(3, batches.size());
+        assertEquals(25, batches.stream().mapToInt(List::size).sum());
+        batcher.dispose();
+    }
+
+    @Test
+    public void failsEveryItemOfAFailedBatch() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(20), 1,
+                items -> Mono.error(new IllegalStateException("down")));
+
+        StepVerifier.create(batcher.submit(1))
+                .expectErrorMessage("down")
+                .verify(Duration.ofSeconds(5));
+        batcher.dispose();
+    }
+
+    @Test
+    public void keepsBatchingWhileSlowBatchCallsAreInFlight() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(10), 1,
+                items -> Mono.delay(Duration.ofMillis(200))
+                        .map(tick -> items.stream().map(item -> "r" + item).collect(Collectors.toList())));
+
+        StepVerifier.create(Flux.range(1, 6)
+                        .delayElements(Duration.ofMillis(40))
+                        .flatMap(batcher::submit)
+                        .collectList())
+                .assertNext(results -> assertEquals(6, results.size()))
+                .verifyComplete();
+
+        StepVerifier.create(batcher.submit(7))
+                .expectNext("r7")
+                .verifyComplete();
+        batcher.dispose();
+    }
+
+    @Test
+    public void timesOutAndFailsPendingItemsOnDispose() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(10), 1,
+                Duration.ofMillis(100), items -> Mono.never());
+
+        StepVerifier.create(batcher.submit(1))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+
+        MicroBatcher<Integer, String> stopped = new MicroBatcher<>("test", 10, Duration.ofSeconds(5), 1,
+                items -> Mono.never());
+        Mono<String> pending = stopped.submit(1).cache();
+        pending.subscribe(result -> { }, e -> { });
+        stopped.dispose();
+        StepVerifier.create(pending)
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void failsItemsWithoutAResult() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", 2, Duration.ofSeconds(5), 1,
+                items -> Mono.just(Collections.singletonList("only")));
+
+        StepVerifier.create(Mono.zip(batcher.submit(1),
+                        batcher.submit(2).onErrorResume(IllegalStateException.class, e -> Mono.just("missing"))))
+                .assertNext(results -> {
+                    assertEquals("only", results.getT1());
+                    assertEquals("missing", results.getT2());
+                })
+                .verifyComplete();
+        batcher.dispose();
+    }
+}